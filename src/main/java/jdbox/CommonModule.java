@@ -1,13 +1,29 @@
 package jdbox;
 
-import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
 import com.google.inject.Singleton;
+import jdbox.memory.MemoryPressureController;
 import jdbox.models.fileids.FileIdStore;
+import jdbox.modules.ActiveModule;
 
-public class CommonModule extends AbstractModule {
+public class CommonModule extends ActiveModule {
 
     @Override
     protected void configure() {
+
         bind(FileIdStore.class).in(Singleton.class);
+
+        bind(MemoryPressureController.Config.class).toInstance(MemoryPressureController.defaultConfig);
+        bind(MemoryPressureController.class).in(Singleton.class);
+    }
+
+    @Override
+    public void init(Injector injector) {
+        injector.getInstance(MemoryPressureController.class).init();
+    }
+
+    @Override
+    public void tearDown(Injector injector) {
+        injector.getInstance(MemoryPressureController.class).tearDown();
     }
 }
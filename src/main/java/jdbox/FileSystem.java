@@ -1,9 +1,12 @@
 package jdbox;
 
 import com.google.inject.Inject;
+import jdbox.content.OpenedFile;
 import jdbox.content.OpenedFiles;
+import jdbox.content.pinned.Pinner;
 import jdbox.filetree.FileTree;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 import net.fusejna.*;
 import net.fusejna.types.TypeMode;
 import net.fusejna.util.FuseFilesystemAdapterFull;
@@ -16,15 +19,19 @@ import java.util.Date;
 
 public class FileSystem extends FuseFilesystemAdapterFull {
 
+    public static final String pinnedXattr = "user.jdbox.pinned";
+
     private static final Logger logger = LoggerFactory.getLogger(FileSystem.class);
 
     private final FileTree fileTree;
     private final OpenedFiles openedFiles;
+    private final Pinner pinner;
 
     @Inject
-    public FileSystem(FileTree fileTree, OpenedFiles openedFiles) {
+    public FileSystem(FileTree fileTree, OpenedFiles openedFiles, Pinner pinner) {
         this.fileTree = fileTree;
         this.openedFiles = openedFiles;
+        this.pinner = pinner;
     }
 
     @Override
@@ -40,9 +47,9 @@ public class FileSystem extends FuseFilesystemAdapterFull {
 
         try {
 
-            File file = fileTree.get(path);
+            FileAttributes attributes = fileTree.getAttributes(path);
 
-            if (file.isDirectory())
+            if (attributes.isDirectory())
                 stat.setMode(
                         TypeMode.NodeType.DIRECTORY,
                         true, true, true,
@@ -51,18 +58,18 @@ public class FileSystem extends FuseFilesystemAdapterFull {
             else
                 stat.setMode(
                         TypeMode.NodeType.FILE,
-                        true, openedFiles.isWritable(file), false,
+                        true, openedFiles.isWritable(attributes), false,
                         true, false, false,
                         true, false, false);
 
-            stat.size(openedFiles.getSize(file));
+            stat.size(openedFiles.getSize(attributes));
 
-            if (file.getCreatedDate() != null)
-                stat.ctime(file.getCreatedDate().getTime() / 1000);
-            if (file.getModifiedDate() != null)
-                stat.mtime(file.getModifiedDate().getTime() / 1000);
-            if (file.getAccessedDate() != null)
-                stat.atime(file.getAccessedDate().getTime() / 1000);
+            if (attributes.getCreatedTime() != FileAttributes.unknownTime)
+                stat.ctime(attributes.getCreatedTime() / 1000);
+            if (attributes.getModifiedTime() != FileAttributes.unknownTime)
+                stat.mtime(attributes.getModifiedTime() / 1000);
+            if (attributes.getAccessedTime() != FileAttributes.unknownTime)
+                stat.atime(attributes.getAccessedTime() / 1000);
 
             return 0;
 
@@ -105,7 +112,7 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         OperationContext.initialize(path, "open", "mode {}", info.openMode());
 
         try {
-            info.fh(openedFiles.open(fileTree.get(path), getOpenMode(info.openMode())).handler);
+            info.fh(openedFiles.open(fileTree.get(path), getOpenMode(info.openMode())).getHandler());
             logger.debug("opened file, fh {}, mode {}", info.fh(), info.openMode());
             return 0;
         } catch (FileTree.NoSuchFileException e) {
@@ -125,7 +132,11 @@ public class FileSystem extends FuseFilesystemAdapterFull {
 
         try {
 
-            openedFiles.get(info.fh()).close();
+            OpenedFile openedFile = openedFiles.get(info.fh());
+            if (openedFile == null)
+                return -ErrorCodes.EBADF();
+
+            openedFile.close();
 
             return 0;
 
@@ -143,7 +154,10 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         OperationContext.initialize(path, "read", "fh {}, offset {}, count {}", info.fh(), offset, count);
 
         try {
-            return openedFiles.get(info.fh()).read(buffer, offset, (int) count);
+            OpenedFile openedFile = openedFiles.get(info.fh());
+            if (openedFile == null)
+                return -ErrorCodes.EBADF();
+            return openedFile.read(buffer, offset, (int) count);
         } catch (IOException e) {
             logger.error("an error occured while reading file", e);
             return -ErrorCodes.EPIPE();
@@ -158,7 +172,10 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         OperationContext.initialize(path, "write", "fh {}, offset {}, count {}", info.fh(), offset, count);
 
         try {
-            return openedFiles.get(info.fh()).write(buffer, offset, (int) count);
+            OpenedFile openedFile = openedFiles.get(info.fh());
+            if (openedFile == null)
+                return -ErrorCodes.EBADF();
+            return openedFile.write(buffer, offset, (int) count);
         } catch (IOException e) {
             logger.error("an error occured while writing file", e);
             return -ErrorCodes.EPIPE();
@@ -167,6 +184,44 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         }
     }
 
+    @Override
+    public int flush(String path, StructFuseFileInfo.FileInfoWrapper info) {
+
+        OperationContext.initialize(path, "flush", "fh {}", info.fh());
+
+        try {
+            OpenedFile openedFile = openedFiles.get(info.fh());
+            if (openedFile == null)
+                return -ErrorCodes.EBADF();
+            openedFile.flush();
+            return 0;
+        } catch (IOException e) {
+            logger.error("an error occured while flushing file", e);
+            return -ErrorCodes.EIO();
+        } finally {
+            OperationContext.clear();
+        }
+    }
+
+    @Override
+    public int fsync(String path, int datasync, StructFuseFileInfo.FileInfoWrapper info) {
+
+        OperationContext.initialize(path, "fsync", "fh {}, datasync {}", info.fh(), datasync);
+
+        try {
+            OpenedFile openedFile = openedFiles.get(info.fh());
+            if (openedFile == null)
+                return -ErrorCodes.EBADF();
+            openedFile.sync();
+            return 0;
+        } catch (IOException e) {
+            logger.error("an error occured while syncing file", e);
+            return -ErrorCodes.EIO();
+        } finally {
+            OperationContext.clear();
+        }
+    }
+
     @Override
     public int create(String path, TypeMode.ModeWrapper mode, StructFuseFileInfo.FileInfoWrapper info) {
 
@@ -176,7 +231,7 @@ public class FileSystem extends FuseFilesystemAdapterFull {
             return -ErrorCodes.ENOSYS();
 
         try {
-            info.fh(openedFiles.open(fileTree.create(path, false), getOpenMode(info.openMode())).handler);
+            info.fh(openedFiles.open(fileTree.create(path, false), getOpenMode(info.openMode())).getHandler());
             logger.debug("opened file, fh {}, mode {}", info.fh(), info.openMode());
             return 0;
         } catch (FileTree.NoSuchFileException e) {
@@ -213,11 +268,11 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         OperationContext.initialize(path, "truncate", "offset {}", offset);
 
         try {
-            try (OpenedFiles.FileHandlerRemovingProxyByteStore openedFile =
+            try (OpenedFile openedFile =
                          openedFiles.open(fileTree.get(path), OpenedFiles.OpenMode.WRITE_ONLY)) {
                 logger.debug(
                         "opened file for truncate, fh {}, mode {}",
-                        path, openedFile.handler, OpenedFiles.OpenMode.WRITE_ONLY);
+                        path, openedFile.getHandler(), OpenedFiles.OpenMode.WRITE_ONLY);
                 openedFile.truncate(offset);
             }
             return 0;
@@ -294,6 +349,65 @@ public class FileSystem extends FuseFilesystemAdapterFull {
         }
     }
 
+    @Override
+    public int getxattr(String path, String xattr, XattrFiller filler, long size, long position) {
+
+        if (!xattr.equals(pinnedXattr) || !pinner.isPinned(path))
+            return -ErrorCodes.ENOATTR();
+
+        filler.set("1");
+
+        return 0;
+    }
+
+    @Override
+    public int listxattr(String path, XattrListFiller filler) {
+
+        if (pinner.isPinned(path))
+            filler.add(pinnedXattr);
+
+        return 0;
+    }
+
+    @Override
+    public int setxattr(String path, String xattr, ByteBuffer value, long size, int flags, int position) {
+
+        if (!xattr.equals(pinnedXattr))
+            return -ErrorCodes.ENOTSUP();
+
+        OperationContext.initialize(path, "pin");
+
+        try {
+            pinner.pin(path);
+            return 0;
+        } catch (FileTree.NoSuchFileException e) {
+            return -ErrorCodes.ENOENT();
+        } catch (IOException e) {
+            logger.error("an error occured while pinning", e);
+            return -ErrorCodes.EPIPE();
+        } finally {
+            OperationContext.clear();
+        }
+    }
+
+    @Override
+    public int removexattr(String path, String xattr) {
+
+        if (!xattr.equals(pinnedXattr))
+            return -ErrorCodes.ENOATTR();
+
+        OperationContext.initialize(path, "unpin");
+
+        try {
+            return pinner.unpin(path) ? 0 : -ErrorCodes.ENOATTR();
+        } catch (IOException e) {
+            logger.error("an error occured while unpinning", e);
+            return -ErrorCodes.EPIPE();
+        } finally {
+            OperationContext.clear();
+        }
+    }
+
     private static OpenedFiles.OpenMode getOpenMode(StructFuseFileInfo.FileInfoWrapper.OpenMode openMode) {
         switch (openMode) {
             case READONLY:
@@ -11,8 +11,18 @@ import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 import jdbox.content.ContentModule;
+import jdbox.content.bytestores.InMemoryByteStoreFactory;
+import jdbox.content.bytestores.MemoryBudget;
+import jdbox.content.localstorage.LocalStorage;
+import jdbox.content.pinned.PinnedContent;
+import jdbox.content.pinned.Pinner;
+import jdbox.content.pinned.PinningModule;
+import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.DriveAdapterModule;
+import jdbox.filetree.FileTree;
 import jdbox.filetree.FileTreeModule;
 import jdbox.localstate.LocalStateModule;
 import jdbox.modules.LifeCycleManager;
@@ -39,6 +49,39 @@ public class JdBox {
         Ini config = new Ini(new File(env.dataDir, "config"));
         String mountPoint = args.length > 0 ? args[0] : config.get("Main", "mount_point");
 
+        String durability = config.get("Main", "durability");
+        if (durability != null) {
+            Integer quietPeriod = config.get("Main", "durability_quiet_period", Integer.class);
+            LocalStorage.defaultConfig = new LocalStorage.Config(
+                    LocalStorage.DurabilityPolicy.valueOf(durability.toUpperCase().replace('-', '_')),
+                    quietPeriod != null ? quietPeriod : LocalStorage.defaultConfig.quietPeriod,
+                    LocalStorage.defaultConfig.syncTimeout);
+        }
+
+        Boolean compressed = config.get("Main", "compressed_content", Boolean.class);
+        if (compressed != null)
+            InMemoryByteStoreFactory.defaultConfig = new InMemoryByteStoreFactory.Config(
+                    InMemoryByteStoreFactory.defaultConfig.bufferSize, compressed,
+                    InMemoryByteStoreFactory.defaultConfig.hotChunks);
+
+        Integer pageSize = config.get("Main", "page_size", Integer.class);
+        if (pageSize != null)
+            DriveAdapter.defaultConfig = new DriveAdapter.Config(pageSize);
+
+        FileTree.defaultConfig = new FileTree.Config(
+                new File(env.dataDir, "known_files"), FileTree.defaultConfig.snapshotPeriod);
+
+        PinnedContent.defaultConfig = new PinnedContent.Config(new File(env.dataDir, "pinned"));
+
+        MemoryBudget.defaultConfig = new MemoryBudget.Config(
+                MemoryBudget.defaultConfig.maxResidentSize, new File(env.dataDir, "spill"));
+
+        String pinned = config.get("Main", "pinned");
+        Pinner.defaultConfig = new Pinner.Config(
+                pinned != null ? Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(pinned)) :
+                        Collections.<String>emptyList(),
+                new File(env.dataDir, "pins"), Pinner.defaultConfig.syncPeriod);
+
         final LifeCycleManager injector = new LifeCycleManager(
                 new CommonModule(),
                 new DriveAdapterModule(createDriveService(env)),
@@ -46,6 +89,7 @@ public class JdBox {
                 new LocalStateModule(),
                 new ContentModule(),
                 new FileTreeModule(true),
+                new PinningModule(),
                 new FileSystemModule()
         );
 
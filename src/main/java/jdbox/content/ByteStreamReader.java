@@ -17,7 +17,7 @@ public class ByteStreamReader {
 
     private Future<InputStream> source;
     private ByteStore destination;
-    private int available = 0;
+    private long available = 0;
 
     public ByteStreamReader(Future<InputStream> source, ByteStore destination, int bufferSize) {
         this.source = source;
@@ -4,25 +4,40 @@ import com.google.inject.Injector;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import jdbox.content.bytestores.InMemoryByteStoreFactory;
+import jdbox.content.bytestores.MemoryBudget;
+import jdbox.content.bytestores.SlabPool;
 import jdbox.content.filetypes.FullAccessOpenedFileFactory;
 import jdbox.content.filetypes.NonDownloadableOpenedFileFactory;
 import jdbox.content.filetypes.RollingReadOpenedFileFactory;
 import jdbox.content.localstorage.FileSizeUpdateEvent;
 import jdbox.content.localstorage.LocalStorage;
+import jdbox.content.pinned.PinnedContent;
+import jdbox.memory.MemoryPressureController;
+import jdbox.memory.MemoryPressureListener;
 import jdbox.modules.ActiveModule;
 import rx.Observable;
 import rx.Observer;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ContentModule extends ActiveModule {
 
     protected volatile ThreadPoolExecutor executor;
+    protected volatile ScheduledThreadPoolExecutor scheduler;
+    protected volatile ThreadPoolExecutor lowPriorityExecutor;
+
+    private final List<MemoryPressureListener> memoryPressureListeners = new ArrayList<>();
 
     @Override
     protected void configure() {
@@ -36,10 +51,35 @@ public class ContentModule extends ActiveModule {
 
         bind(Executor.class).annotatedWith(PackagePrivate.class).toInstance(executor);
 
+        scheduler = new ScheduledThreadPoolExecutor(1);
+
+        bind(ScheduledExecutorService.class).annotatedWith(PackagePrivate.class).toInstance(scheduler);
+
+        // background work that nobody waits for, it is dropped rather than queued once the executor is busy
+        lowPriorityExecutor = new ThreadPoolExecutor(
+                1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(16), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "content low priority");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        lowPriorityExecutor.allowCoreThreadTimeOut(true);
+
+        bind(Executor.class).annotatedWith(LowPriority.class).toInstance(lowPriorityExecutor);
+
         bind(OpenedFiles.Config.class).toInstance(OpenedFiles.defaultConfig);
 
         bind(NonDownloadableOpenedFileFactory.class).in(Singleton.class);
 
+        bind(SlabPool.Config.class).toInstance(SlabPool.defaultConfig);
+        bind(SlabPool.class).in(Singleton.class);
+
+        bind(MemoryBudget.Config.class).toInstance(MemoryBudget.defaultConfig);
+        bind(MemoryBudget.class).in(Singleton.class);
+
         bind(InMemoryByteStoreFactory.Config.class).toInstance(InMemoryByteStoreFactory.defaultConfig);
         bind(InMemoryByteStoreFactory.class).in(Singleton.class);
 
@@ -49,6 +89,10 @@ public class ContentModule extends ActiveModule {
         bind(RollingReadOpenedFileFactory.Config.class).toInstance(RollingReadOpenedFileFactory.defaultConfig);
         bind(RollingReadOpenedFileFactory.class).in(Singleton.class);
 
+        bind(PinnedContent.Config.class).toInstance(PinnedContent.defaultConfig);
+        bind(PinnedContent.class).in(Singleton.class);
+
+        bind(LocalStorage.Config.class).toInstance(LocalStorage.defaultConfig);
         bind(LocalStorage.class).in(Singleton.class);
 
         Subject<FileSizeUpdateEvent, FileSizeUpdateEvent> fileSizeUpdateEvent = PublishSubject.create();
@@ -56,10 +100,59 @@ public class ContentModule extends ActiveModule {
         bind(new TypeLiteral<Observer<FileSizeUpdateEvent>>() {}).toInstance(fileSizeUpdateEvent);
     }
 
+    @Override
+    public void init(Injector injector) {
+
+        injector.getInstance(LocalStorage.class).init();
+
+        final SlabPool slabPool = injector.getInstance(SlabPool.class);
+        final LocalStorage localStorage = injector.getInstance(LocalStorage.class);
+        final MemoryBudget memoryBudget = injector.getInstance(MemoryBudget.class);
+
+        // cheapest to recreate first: pooled slabs, then content of closed files, then content of opened files
+        register(injector, 10, new MemoryPressureListener() {
+            @Override
+            public long shed() {
+                return slabPool.drain();
+            }
+        });
+
+        register(injector, 20, new MemoryPressureListener() {
+            @Override
+            public long shed() {
+                return localStorage.dropRetained();
+            }
+        });
+
+        register(injector, 30, new MemoryPressureListener() {
+            @Override
+            public long shed() {
+                return memoryBudget.spillAll();
+            }
+        });
+    }
+
     @Override
     public void tearDown(Injector injector) throws InterruptedException {
+        unregisterMemoryPressureListeners(injector);
+        injector.getInstance(LocalStorage.class).tearDown();
+        scheduler.shutdown();
         executor.shutdown();
+        lowPriorityExecutor.shutdownNow();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
         executor.awaitTermination(5, TimeUnit.SECONDS);
+        lowPriorityExecutor.awaitTermination(5, TimeUnit.SECONDS);
     }
-}
 
+    private void register(Injector injector, int priority, MemoryPressureListener listener) {
+        injector.getInstance(MemoryPressureController.class).register(priority, listener);
+        memoryPressureListeners.add(listener);
+    }
+
+    protected void unregisterMemoryPressureListeners(Injector injector) {
+        MemoryPressureController memoryPressureController = injector.getInstance(MemoryPressureController.class);
+        for (MemoryPressureListener listener : memoryPressureListeners)
+            memoryPressureController.unregister(listener);
+        memoryPressureListeners.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package jdbox.content;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps handles to values. A handle consists of a slot index (lower 32 bits) and the slot generation (upper 32 bits),
+ * the generation is incremented every time a slot is reused, so a stale handle never resolves to a newer value.
+ * Lookups do not lock, reserving and removing handles are serialized.
+ */
+class HandleTable<T> {
+
+    private static final int initialCapacity = 64;
+
+    private volatile Slots<T> slots = new Slots<>(initialCapacity);
+    private int[] generations = new int[initialCapacity];
+    private int used = 0;
+    private final Deque<Integer> free = new ArrayDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public int size() {
+        return size.get();
+    }
+
+    public synchronized long reserve() {
+
+        int slot;
+        if (!free.isEmpty()) {
+            slot = free.pop();
+        } else {
+            if (used == generations.length)
+                grow();
+            slot = used++;
+        }
+
+        if (++generations[slot] == 0)
+            generations[slot] = 1;
+
+        long handle = ((long) generations[slot] << 32) | slot;
+
+        slots.handles.set(slot, handle);
+        size.incrementAndGet();
+
+        return handle;
+    }
+
+    public synchronized void set(long handle, T value) {
+        int slot = (int) handle;
+        assert slots.handles.get(slot) == handle;
+        slots.values.set(slot, value);
+    }
+
+    public T get(long handle) {
+
+        Slots<T> slots = this.slots;
+
+        int slot = (int) handle;
+        if (slot < 0 || slot >= slots.values.length())
+            return null;
+
+        if (slots.handles.get(slot) != handle)
+            return null;
+
+        T value = slots.values.get(slot);
+
+        // the slot might have been released and reused in between
+        if (slots.handles.get(slot) != handle)
+            return null;
+
+        return value;
+    }
+
+    public synchronized T remove(long handle) {
+
+        int slot = (int) handle;
+        if (slot < 0 || slot >= used || slots.handles.get(slot) != handle)
+            return null;
+
+        slots.handles.set(slot, 0);
+        T value = slots.values.getAndSet(slot, null);
+
+        free.push(slot);
+        size.decrementAndGet();
+
+        return value;
+    }
+
+    private void grow() {
+
+        Slots<T> grown = new Slots<>(generations.length * 2);
+        for (int i = 0; i < used; i++) {
+            grown.handles.set(i, slots.handles.get(i));
+            grown.values.set(i, slots.values.get(i));
+        }
+
+        int[] generations = new int[grown.values.length()];
+        System.arraycopy(this.generations, 0, generations, 0, used);
+
+        this.generations = generations;
+        slots = grown;
+    }
+
+    private static class Slots<T> {
+
+        final AtomicLongArray handles;
+        final AtomicReferenceArray<T> values;
+
+        Slots(int capacity) {
+            handles = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
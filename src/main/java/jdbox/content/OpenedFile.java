@@ -0,0 +1,11 @@
+package jdbox.content;
+
+import jdbox.content.bytestores.SyncableByteStore;
+
+/**
+ * Content opened under a file handler, closing it releases the handler.
+ */
+public interface OpenedFile extends SyncableByteStore {
+
+    long getHandler();
+}
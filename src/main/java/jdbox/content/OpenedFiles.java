@@ -2,15 +2,19 @@ package jdbox.content;
 
 import com.google.inject.Inject;
 import jdbox.content.bytestores.ByteStore;
+import jdbox.content.bytestores.SyncableByteStore;
+import jdbox.content.bytestores.WriteGatheringByteStore;
 import jdbox.content.filetypes.*;
 import jdbox.content.localstorage.LocalStorage;
+import jdbox.content.pinned.PinnedContent;
+import jdbox.content.pinned.PinnedOpenedFileFactory;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
+import jdbox.models.fileids.FileId;
 import jdbox.uploader.Uploader;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 
 public class OpenedFiles implements OpenedFilesManager {
 
@@ -31,8 +35,7 @@ public class OpenedFiles implements OpenedFilesManager {
 
     private volatile Config config;
 
-    private final Map<Long, FileHandlerRemovingProxyByteStore> fileHandlers = new HashMap<>();
-    private long currentFileHandler = 1;
+    private final HandleTable<OpenedFile> fileHandlers = new HandleTable<>();
 
     @Inject
     public OpenedFiles(
@@ -40,11 +43,12 @@ public class OpenedFiles implements OpenedFilesManager {
             FullAccessOpenedFileFactory fullAccessOpenedFileFactory,
             RollingReadOpenedFileFactory rollingReadOpenedFileFactory,
             UploadStatusOpenedFileFactory uploadStatusOpenedFileFactory,
-            LocalStorage localStorage, Config config) {
+            LocalStorage localStorage, PinnedContent pinnedContent, Config config) {
 
         this.nonDownloadableOpenedFileFactory = nonDownloadableOpenedFileFactory;
-        this.fullAccessOpenedFileFactory = new LocalStorageOpenedFileFactory(fullAccessOpenedFileFactory);
-        this.rollingReadOpenedFileFactory = rollingReadOpenedFileFactory;
+        this.fullAccessOpenedFileFactory = fullAccessOpenedFileFactory;
+        this.rollingReadOpenedFileFactory =
+                new PinnedOpenedFileFactory(pinnedContent, rollingReadOpenedFileFactory);
         this.uploadStatusOpenedFileFactory = uploadStatusOpenedFileFactory;
 
         this.localStorage = localStorage;
@@ -60,7 +64,7 @@ public class OpenedFiles implements OpenedFilesManager {
     }
 
     @Override
-    public synchronized int getOpenedFilesCount() {
+    public int getOpenedFilesCount() {
         return fileHandlers.size();
     }
 
@@ -69,78 +73,117 @@ public class OpenedFiles implements OpenedFilesManager {
         localStorage.reset();
     }
 
-    public synchronized FileHandlerRemovingProxyByteStore open(File file, OpenMode openMode) throws IOException {
+    public synchronized OpenedFile open(File file, OpenMode openMode) throws IOException {
 
-        currentFileHandler++;
-
-        ByteStore openedFile = localStorage.getContent(file.getId());
-        if (openedFile == null)
-            openedFile = getOpenedFileFactory(file, openMode).create(file);
-
-        FileHandlerRemovingProxyByteStore fileHandlerRemovingProxyByteStore =
-                new FileHandlerRemovingProxyByteStore(currentFileHandler, openedFile);
+        final long handler = fileHandlers.reserve();
+        Runnable releaseHandler = new Runnable() {
+            @Override
+            public void run() {
+                fileHandlers.remove(handler);
+            }
+        };
+
+        OpenedFile openedFile;
+
+        try {
+            openedFile = localStorage.getContent(file, handler, releaseHandler);
+            if (openedFile == null) {
+                OpenedFileFactory factory = getOpenedFileFactory(new FileAttributes(file), openMode);
+                if (factory == fullAccessOpenedFileFactory)
+                    openedFile = createLocalContent(file, handler, releaseHandler);
+                else
+                    openedFile = new FileHandlerRemovingProxyByteStore(handler, factory.create(file));
+            }
+        } catch (IOException | RuntimeException e) {
+            fileHandlers.remove(handler);
+            throw e;
+        }
 
-        fileHandlers.put(currentFileHandler, fileHandlerRemovingProxyByteStore);
+        fileHandlers.set(handler, openedFile);
 
-        return fileHandlerRemovingProxyByteStore;
+        return openedFile;
     }
 
-    public synchronized FileHandlerRemovingProxyByteStore get(long fileHandler) {
+    /**
+     * Does not lock, returns null if the handler is unknown or has already been closed.
+     */
+    public OpenedFile get(long fileHandler) {
         return fileHandlers.get(fileHandler);
     }
 
-    public long getSize(File file) {
+    public long getSize(FileAttributes attributes) {
 
-        if (file.isDirectory())
+        if (attributes.isDirectory())
             return 0;
 
-        Long size = localStorage.getSize(file.getId());
+        Long size = localStorage.getSize(attributes.getId());
         if (size != null)
             return size;
 
-        return getOpenedFileFactory(file, OpenMode.READ_ONLY).getSize(file);
+        return getOpenedFileFactory(attributes, OpenMode.READ_ONLY).getSize(attributes);
     }
 
-    public boolean isWritable(File file) {
-        return isReal(file) && !isLargeFile(file);
+    public boolean isWritable(FileAttributes attributes) {
+        return isReal(attributes) && !isLargeFile(attributes);
     }
 
-    private OpenedFileFactory getOpenedFileFactory(File file, OpenMode openMode) {
-        if (file.getId().isSet() && file.getId().get().equals(Uploader.uploadFailureNotificationFileId))
+    private OpenedFileFactory getOpenedFileFactory(FileAttributes attributes, OpenMode openMode) {
+        FileId id = attributes.getId();
+        if (id.isSet() && id.get().equals(Uploader.uploadFailureNotificationFileId))
             return uploadStatusOpenedFileFactory;
-        if (!isReal(file) && openMode.equals(OpenMode.READ_ONLY))
+        if (!isReal(attributes) && openMode.equals(OpenMode.READ_ONLY))
             return nonDownloadableOpenedFileFactory;
-        if (isWritable(file))
+        if (isWritable(attributes))
             return fullAccessOpenedFileFactory;
-        if (isReal(file))
+        if (isReal(attributes))
             return rollingReadOpenedFileFactory;
         throw new UnsupportedOperationException();
     }
 
-    private boolean isReal(File file) {
-        return !file.getId().isSet() || file.getDownloadUrl() != null && file.getDownloadUrl().length() != 0;
+    private OpenedFile createLocalContent(File file, long handler, Runnable releaseHandler) throws IOException {
+        ByteStore content = localStorage.copyContent(file.getMd5Sum());
+        if (content == null)
+            content = fullAccessOpenedFileFactory.create(file);
+        int writeBufferSize = config.writeBufferSize;
+        if (writeBufferSize > 0)
+            content = new WriteGatheringByteStore(content, writeBufferSize);
+        return localStorage.putContent(file, content, handler, releaseHandler);
     }
 
-    private boolean isLargeFile(File file) {
-        return file.getSize() > config.largeFileSize;
+    private boolean isReal(FileAttributes attributes) {
+        return !attributes.getId().isSet() || attributes.hasDownloadUrl();
+    }
+
+    private boolean isLargeFile(FileAttributes attributes) {
+        return attributes.getSize() > config.largeFileSize;
     }
 
     public static class Config {
 
         public final int largeFileSize;
+        public final int writeBufferSize;
 
         public Config() {
             largeFileSize = 1024 * 1024;
+            writeBufferSize = 128 * 1024;
         }
 
         public Config(int largeFileSize) {
+            this(largeFileSize, 128 * 1024);
+        }
+
+        public Config(int largeFileSize, int writeBufferSize) {
             this.largeFileSize = largeFileSize;
+            this.writeBufferSize = writeBufferSize;
         }
     }
 
-    public class FileHandlerRemovingProxyByteStore implements ByteStore {
+    /**
+     * Content that is not kept in the local storage, the local storage releases handlers of its own content.
+     */
+    private class FileHandlerRemovingProxyByteStore implements OpenedFile {
 
-        public final long handler;
+        private final long handler;
         private final ByteStore content;
 
         public FileHandlerRemovingProxyByteStore(long handler, ByteStore content) {
@@ -148,6 +191,11 @@ public class OpenedFiles implements OpenedFilesManager {
             this.content = content;
         }
 
+        @Override
+        public long getHandler() {
+            return handler;
+        }
+
         @Override
         public int read(ByteBuffer buffer, long offset, int count) throws IOException {
             return content.read(buffer, offset, count);
@@ -169,30 +217,22 @@ public class OpenedFiles implements OpenedFilesManager {
         }
 
         @Override
-        public void close() throws IOException {
-            synchronized (OpenedFiles.this) {
-                fileHandlers.remove(handler);
-            }
-            content.close();
-        }
-    }
-
-    class LocalStorageOpenedFileFactory implements OpenedFileFactory {
-
-        private final OpenedFileFactory factory;
-
-        LocalStorageOpenedFileFactory(OpenedFileFactory factory) {
-            this.factory = factory;
+        public void flush() throws IOException {
+            if (content instanceof SyncableByteStore)
+                ((SyncableByteStore) content).flush();
         }
 
         @Override
-        public long getSize(File file) {
-            return factory.getSize(file);
+        public void sync() throws IOException {
+            if (content instanceof SyncableByteStore)
+                ((SyncableByteStore) content).sync();
         }
 
         @Override
-        public ByteStore create(File file) throws IOException {
-            return localStorage.putContent(file.getId(), factory.create(file));
+        public void close() throws IOException {
+            if (fileHandlers.remove(handler) == null)
+                return;
+            content.close();
         }
     }
 }
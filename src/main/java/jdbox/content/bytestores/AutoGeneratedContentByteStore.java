@@ -2,15 +2,17 @@ package jdbox.content.bytestores;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 public abstract class AutoGeneratedContentByteStore implements ByteStore {
 
     @Override
     public int read(ByteBuffer buffer, long offset, int count) throws IOException {
-        String content = getContent();
-        buffer.put(Arrays.copyOfRange(content.getBytes(), (int) offset, (int) (offset + count)));
-        return (int) Math.min(count, content.length() - offset);
+        byte[] content = getContent().getBytes();
+        if (offset >= content.length)
+            return 0;
+        int read = (int) Math.min(count, content.length - offset);
+        buffer.put(content, (int) offset, read);
+        return read;
     }
 
     @Override
@@ -29,7 +31,7 @@ public abstract class AutoGeneratedContentByteStore implements ByteStore {
 
     @Override
     public long getSize() {
-        return getContent().length();
+        return getContent().getBytes().length;
     }
 
     protected abstract String getContent();
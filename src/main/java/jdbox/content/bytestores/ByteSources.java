@@ -6,28 +6,45 @@ import java.nio.ByteBuffer;
 
 public class ByteSources {
 
-    public static int copy(ByteSource source, ByteStore destination) throws IOException {
+    public static long copy(ByteSource source, ByteStore destination) throws IOException {
         return copy(source, destination, 16 * 1024);
     }
 
-    public static int copy(ByteSource source, ByteStore destination, int bufferSize) throws IOException {
+    /**
+     * Runs of zeros are not written when copying into an empty destination, so holes in the source stay holes.
+     */
+    public static long copy(ByteSource source, ByteStore destination, int bufferSize) throws IOException {
 
         ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 
-        int offset = 0;
+        boolean sparse = destination.getSize() == 0;
+
+        long offset = 0;
         int read;
 
         do {
             buffer.rewind();
             read = source.read(buffer, offset, bufferSize);
             buffer.rewind();
-            destination.write(buffer, offset, read);
+            if (!sparse || !isZero(buffer.array(), read))
+                destination.write(buffer, offset, read);
             offset += read;
         } while (read == bufferSize);
 
+        if (destination.getSize() < offset)
+            destination.truncate(offset);
+
         return offset;
     }
 
+    private static boolean isZero(byte[] bytes, int count) {
+        for (int i = 0; i < count; i++) {
+            if (bytes[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
     public static ByteSourceInputStream toInputStream(ByteSource source) {
         return new ByteSourceInputStream(source);
     }
@@ -37,7 +54,7 @@ public class ByteSources {
         private final ByteBuffer oneByteBuffer = ByteBuffer.allocate(1);
 
         private ByteSource source;
-        private int position = 0;
+        private long position = 0;
 
         public ByteSourceInputStream(ByteSource source) {
             this.source = source;
@@ -47,10 +64,11 @@ public class ByteSources {
         public synchronized int read() throws IOException {
             if (source == null)
                 throw new IOException("read on a closed InputStream");
-            int read = source.read(oneByteBuffer, position, 1);
-            oneByteBuffer.reset();
+            oneByteBuffer.rewind();
+            if (source.read(oneByteBuffer, position, 1) == 0)
+                return -1;
             position++;
-            return read == 0 ? -1 : oneByteBuffer.get();
+            return oneByteBuffer.get(0) & 0xff;
         }
 
         @Override
@@ -65,6 +83,16 @@ public class ByteSources {
             return read == 0 ? -1 : read;
         }
 
+        @Override
+        public synchronized long skip(long count) throws IOException {
+            if (source == null)
+                throw new IOException("skip on a closed InputStream");
+            if (count <= 0)
+                return 0;
+            position += count;
+            return count;
+        }
+
         @Override
         public synchronized void reset() throws IOException {
             position = 0;
@@ -0,0 +1,267 @@
+package jdbox.content.bytestores;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content is kept in fixed size chunks, a few recently used (hot) chunks are kept as is, the rest are sealed, i.e.
+ * kept compressed. Chunks that do not compress well enough are kept as is even when sealed. As in InMemoryByteStore,
+ * chunks that have never been written to are not materialized and read back as zeros.
+ */
+class CompressedByteStore implements ResidentByteStore {
+
+    private static final double MAX_COMPRESSION_RATIO = 0.875;
+
+    private static final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private final int chunkSize;
+    private final int maxHotChunks;
+
+    private SortedMap<Long, Chunk> chunks = new TreeMap<>();
+    private final LinkedHashMap<Long, Chunk> hotChunks = new LinkedHashMap<>(16, 0.75f, true);
+    private long length = 0;
+    private long residentSize = 0;
+
+    CompressedByteStore(int chunkSize, int maxHotChunks) {
+        this.chunkSize = chunkSize;
+        this.maxHotChunks = maxHotChunks;
+    }
+
+    public synchronized int getChunkCount() {
+        return chunks.size();
+    }
+
+    @Override
+    public synchronized long getResidentSize() {
+        return residentSize;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (chunks == null)
+            throw new IOException("read on a closed ByteStore");
+
+        if (offset >= length)
+            return 0;
+
+        count = (int) Math.min(count, length - offset);
+
+        int read = 0;
+
+        while (read < count) {
+
+            long n = (offset + read) / chunkSize;
+
+            int srcOffset = (int) (offset + read - chunkSize * n);
+            int bytesToRead = Math.min(count - read, chunkSize - srcOffset);
+
+            Chunk chunk = chunks.get(n);
+
+            if (chunk != null)
+                buffer.put(getHot(n, chunk).raw, srcOffset, bytesToRead);
+            else
+                SlabPool.putZeros(buffer, bytesToRead);
+
+            read += bytesToRead;
+        }
+
+        return read;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (chunks == null)
+            throw new IOException("write on a closed ByteStore");
+
+        int written = 0;
+
+        while (written < count) {
+
+            long n = (offset + written) / chunkSize;
+
+            int dstOffset = (int) (offset + written - chunkSize * n);
+            int bytesToWrite = Math.min(count - written, chunkSize - dstOffset);
+
+            Chunk chunk = chunks.get(n);
+            if (chunk == null) {
+                chunk = new Chunk(new byte[chunkSize]);
+                chunks.put(n, chunk);
+                residentSize += chunkSize;
+            }
+
+            chunk = getHot(n, chunk);
+            buffer.get(chunk.raw, dstOffset, bytesToWrite);
+            chunk.setDirty();
+
+            written += bytesToWrite;
+        }
+
+        length = Math.max(length, offset + written);
+
+        return written;
+    }
+
+    @Override
+    public synchronized void truncate(long length) throws IOException {
+
+        if (chunks == null)
+            throw new IOException("truncate on a closed ByteStore");
+
+        if (length >= this.length) {
+            this.length = length;
+            return;
+        }
+
+        this.length = length;
+
+        long required = (this.length + chunkSize - 1) / chunkSize;
+
+        SortedMap<Long, Chunk> tail = chunks.tailMap(required);
+        for (Map.Entry<Long, Chunk> entry : tail.entrySet()) {
+            residentSize -= entry.getValue().getResidentSize();
+            hotChunks.remove(entry.getKey());
+        }
+        tail.clear();
+
+        long n = this.length / chunkSize;
+        Chunk last = chunks.get(n);
+        if (last != null) {
+            last = getHot(n, last);
+            Arrays.fill(last.raw, (int) (this.length % chunkSize), chunkSize, (byte) 0);
+            last.setDirty();
+        }
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (chunks == null)
+            return;
+
+        hotChunks.clear();
+        chunks.clear();
+        chunks = null;
+        residentSize = 0;
+    }
+
+    private Chunk getHot(long n, Chunk chunk) throws IOException {
+
+        if (hotChunks.get(n) != null)
+            return chunk;
+
+        if (chunk.raw == null) {
+            chunk.raw = decompress(chunk.compressed);
+            residentSize += chunkSize;
+        }
+
+        hotChunks.put(n, chunk);
+
+        if (hotChunks.size() > maxHotChunks) {
+            Iterator<Chunk> iterator = hotChunks.values().iterator();
+            Chunk eldest = iterator.next();
+            iterator.remove();
+            seal(eldest);
+        }
+
+        return chunk;
+    }
+
+    private void seal(Chunk chunk) {
+
+        residentSize -= chunk.getResidentSize();
+
+        if (chunk.dirty) {
+            chunk.compressed = compress(chunk.raw);
+            chunk.dirty = false;
+        }
+
+        if (chunk.compressed != null)
+            chunk.raw = null;
+
+        residentSize += chunk.getResidentSize();
+    }
+
+    private byte[] compress(byte[] raw) {
+
+        Deflater deflater = CompressedByteStore.deflater.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        byte[] buffer = new byte[(int) (raw.length * MAX_COMPRESSION_RATIO)];
+
+        int length = deflater.deflate(buffer);
+        if (!deflater.finished())
+            return null;
+
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private byte[] decompress(byte[] compressed) throws IOException {
+
+        Inflater inflater = CompressedByteStore.inflater.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        byte[] raw = new byte[chunkSize];
+
+        try {
+            if (inflater.inflate(raw) != chunkSize)
+                throw new IOException("a compressed chunk is corrupted");
+        } catch (DataFormatException e) {
+            throw new IOException("a compressed chunk is corrupted", e);
+        }
+
+        return raw;
+    }
+
+    /**
+     * Either raw or compressed is always set. When both are set, they hold the same content unless the chunk is dirty.
+     */
+    private static class Chunk {
+
+        byte[] raw;
+        byte[] compressed;
+        boolean dirty;
+
+        Chunk(byte[] raw) {
+            this.raw = raw;
+        }
+
+        void setDirty() {
+            dirty = true;
+        }
+
+        long getResidentSize() {
+            return (raw != null ? raw.length : 0) + (compressed != null ? compressed.length : 0);
+        }
+    }
+}
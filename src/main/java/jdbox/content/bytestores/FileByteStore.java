@@ -0,0 +1,102 @@
+package jdbox.content.bytestores;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Content is kept in a file which is unlinked right after it is opened, so nothing is left behind should the process
+ * die. Ranges that have never been written to are read back as zeros.
+ */
+class FileByteStore implements ByteStore {
+
+    private FileChannel channel;
+    private long length = 0;
+
+    FileByteStore(File file) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (channel == null)
+            throw new IOException("read on a closed ByteStore");
+
+        if (offset >= length)
+            return 0;
+
+        count = (int) Math.min(count, length - offset);
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+
+        try {
+            int read = 0;
+            while (read < count) {
+                int n = channel.read(buffer, offset + read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            SlabPool.putZeros(buffer, count - read);
+        } finally {
+            buffer.limit(limit);
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (channel == null)
+            throw new IOException("write on a closed ByteStore");
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+
+        try {
+            int written = 0;
+            while (written < count)
+                written += channel.write(buffer, offset + written);
+        } finally {
+            buffer.limit(limit);
+        }
+
+        length = Math.max(length, offset + count);
+
+        return count;
+    }
+
+    @Override
+    public synchronized void truncate(long length) throws IOException {
+
+        if (channel == null)
+            throw new IOException("truncate on a closed ByteStore");
+
+        if (length < this.length)
+            channel.truncate(length);
+
+        this.length = length;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (channel == null)
+            return;
+
+        channel.close();
+        channel = null;
+    }
+}
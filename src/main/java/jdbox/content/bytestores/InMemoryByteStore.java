@@ -2,17 +2,23 @@ package jdbox.content.bytestores;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
-class InMemoryByteStore implements ByteStore {
+/**
+ * Content is kept in fixed size chunks, chunks that have never been written to are not materialized and read back
+ * as zeros. Bytes of materialized chunks that lie beyond the current length are always zero.
+ */
+class InMemoryByteStore implements ResidentByteStore {
 
+    private final SlabPool pool;
     private final int bufferSize;
 
-    private List<byte[]> buffers = new ArrayList<>();
-    private int length = 0;
+    private SortedMap<Long, ByteBuffer> buffers = new TreeMap<>();
+    private long length = 0;
 
-    InMemoryByteStore(int bufferSize) {
+    InMemoryByteStore(SlabPool pool, int bufferSize) {
+        this.pool = pool;
         this.bufferSize = bufferSize;
     }
 
@@ -20,6 +26,11 @@ class InMemoryByteStore implements ByteStore {
         return buffers.size();
     }
 
+    @Override
+    public synchronized long getResidentSize() {
+        return (long) buffers.size() * bufferSize;
+    }
+
     @Override
     public synchronized int read(ByteBuffer buffer, long offset, int count) throws IOException {
 
@@ -29,21 +40,26 @@ class InMemoryByteStore implements ByteStore {
         if (offset >= length)
             return 0;
 
-        count = Math.min(count, length - (int) offset);
+        count = (int) Math.min(count, length - offset);
 
         int read = 0;
 
         while (read < count) {
 
-            int n = ((int) offset + read) / bufferSize;
-            assert n < buffers.size();
+            long n = (offset + read) / bufferSize;
 
-            byte[] src = buffers.get(n);
+            ByteBuffer src = buffers.get(n);
 
-            int srcOffset = (int) offset + read - bufferSize * n;
+            int srcOffset = (int) (offset + read - bufferSize * n);
             int bytesToRead = Math.min(count - read, bufferSize - srcOffset);
 
-            buffer.put(src, srcOffset, bytesToRead);
+            if (src != null) {
+                src.limit(srcOffset + bytesToRead).position(srcOffset);
+                buffer.put(src);
+            } else {
+                SlabPool.putZeros(buffer, bytesToRead);
+            }
+
             read += bytesToRead;
         }
 
@@ -56,32 +72,35 @@ class InMemoryByteStore implements ByteStore {
         if (buffers == null)
             throw new IOException("write on a closed ByteStore");
 
-        assert offset <= length;
-
         int written = 0;
+        int limit = buffer.limit();
 
-        while (written < count) {
+        try {
 
-            int n = ((int) offset + written) / bufferSize;
+            while (written < count) {
 
-            assert n <= buffers.size();
+                long n = (offset + written) / bufferSize;
 
-            byte[] dst;
-            if (n < buffers.size())
-                dst = buffers.get(n);
-            else {
-                dst = new byte[bufferSize];
-                buffers.add(dst);
-            }
+                ByteBuffer dst = buffers.get(n);
+                if (dst == null) {
+                    dst = pool.acquire(bufferSize);
+                    buffers.put(n, dst);
+                }
 
-            int dstOffset = (int) offset + written - bufferSize * n;
-            int bytesToWrite = Math.min(count - written, bufferSize - dstOffset);
+                int dstOffset = (int) (offset + written - bufferSize * n);
+                int bytesToWrite = Math.min(count - written, bufferSize - dstOffset);
 
-            buffer.get(dst, dstOffset, bytesToWrite);
-            written += bytesToWrite;
+                dst.limit(dstOffset + bytesToWrite).position(dstOffset);
+                buffer.limit(buffer.position() + bytesToWrite);
+                dst.put(buffer);
+                written += bytesToWrite;
+            }
+
+        } finally {
+            buffer.limit(limit);
         }
 
-        length = Math.max(length, (int) offset + written);
+        length = Math.max(length, offset + written);
 
         return written;
     }
@@ -92,17 +111,24 @@ class InMemoryByteStore implements ByteStore {
         if (buffers == null)
             throw new IOException("truncate on a closed ByteStore");
 
-        if (length == this.length)
+        if (length >= this.length) {
+            this.length = length;
             return;
+        }
 
-        if (length < this.length) {
-            this.length = (int) length;
-        } else {
-            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-            while (this.length < length) {
-                buffer.rewind();
-                write(buffer, this.length, (int) Math.min(bufferSize, length - this.length));
-            }
+        this.length = length;
+
+        long required = (this.length + bufferSize - 1) / bufferSize;
+
+        SortedMap<Long, ByteBuffer> tail = buffers.tailMap(required);
+        for (ByteBuffer buffer : tail.values())
+            pool.release(buffer);
+        tail.clear();
+
+        ByteBuffer last = buffers.get(this.length / bufferSize);
+        if (last != null) {
+            last.limit(bufferSize).position((int) (this.length % bufferSize));
+            SlabPool.putZeros(last, last.remaining());
         }
     }
 
@@ -117,6 +143,9 @@ class InMemoryByteStore implements ByteStore {
         if (buffers == null)
             return;
 
+        for (ByteBuffer buffer : buffers.values())
+            pool.release(buffer);
+
         buffers.clear();
         buffers = null;
     }
@@ -6,10 +6,15 @@ public class InMemoryByteStoreFactory {
 
     public static Config defaultConfig = new Config();
 
+    private final SlabPool pool;
+    private final MemoryBudget budget;
+
     private volatile Config config;
 
     @Inject
-    InMemoryByteStoreFactory(Config config) {
+    InMemoryByteStoreFactory(SlabPool pool, MemoryBudget budget, Config config) {
+        this.pool = pool;
+        this.budget = budget;
         this.config = config;
     }
 
@@ -17,20 +22,37 @@ public class InMemoryByteStoreFactory {
         this.config = config;
     }
 
-    public InMemoryByteStore create() {
-        return new InMemoryByteStore(config.bufferSize);
+    public ByteStore create() {
+        return budget.track(createResident());
+    }
+
+    ResidentByteStore createResident() {
+        Config config = this.config;
+        if (config.compressed)
+            return new CompressedByteStore(config.bufferSize, config.hotChunks);
+        return new InMemoryByteStore(pool, config.bufferSize);
     }
 
     public static class Config {
 
         public final int bufferSize;
+        public final boolean compressed;
+        public final int hotChunks;
 
         public Config() {
             bufferSize = 16 * 1024;
+            compressed = false;
+            hotChunks = 8;
         }
 
         public Config(int bufferSize) {
+            this(bufferSize, false, 8);
+        }
+
+        public Config(int bufferSize, boolean compressed, int hotChunks) {
             this.bufferSize = bufferSize;
+            this.compressed = compressed;
+            this.hotChunks = hotChunks;
         }
     }
 }
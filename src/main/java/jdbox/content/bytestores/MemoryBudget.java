@@ -0,0 +1,166 @@
+package jdbox.content.bytestores;
+
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounts for memory held by all byte stores created through InMemoryByteStoreFactory. Once the resident size
+ * exceeds config.maxResidentSize, the least recently accessed stores are spilled to files in config.spillDirectory
+ * until the resident size is back within the budget.
+ * Only one thread spills at a time, others proceed without waiting for it.
+ */
+public class MemoryBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+
+    public static Config defaultConfig = new Config();
+
+    private final Set<SpillableByteStore> stores =
+            Collections.newSetFromMap(new ConcurrentHashMap<SpillableByteStore, Boolean>());
+    private final AtomicLong residentSize = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final Lock spillLock = new ReentrantLock();
+
+    private volatile Config config;
+
+    @Inject
+    public MemoryBudget(Config config) {
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public long getResidentSize() {
+        return residentSize.get();
+    }
+
+    public long getSpills() {
+        return spills.get();
+    }
+
+    public int getStoreCount() {
+        return stores.size();
+    }
+
+    ByteStore track(ResidentByteStore store) {
+        SpillableByteStore result = new SpillableByteStore(this, store);
+        stores.add(result);
+        return result;
+    }
+
+    void untrack(SpillableByteStore store, long delta) {
+        stores.remove(store);
+        residentSize.addAndGet(delta);
+    }
+
+    void update(long delta) {
+        // most operations do not change the resident size, do not touch the shared counter for them
+        if (delta != 0 && residentSize.addAndGet(delta) > config.maxResidentSize)
+            enforce();
+    }
+
+    FileByteStore createSpillStore() throws IOException {
+
+        File directory = config.spillDirectory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create " + directory);
+
+        return new FileByteStore(File.createTempFile("jdbox-", ".spill", directory));
+    }
+
+    /**
+     * Spills all stores regardless of the budget, waits for a spill that is in progress.
+     *
+     * @return The number of bytes released.
+     */
+    public long spillAll() {
+        spillLock.lock();
+        try {
+            return spill(0);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private void enforce() {
+
+        if (!spillLock.tryLock())
+            return;
+
+        try {
+            spill(config.maxResidentSize);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private long spill(long maxResidentSize) {
+
+        List<Map.Entry<Long, SpillableByteStore>> candidates = new ArrayList<>();
+        for (SpillableByteStore store : stores)
+            candidates.add(new AbstractMap.SimpleImmutableEntry<>(store.getLastAccess(), store));
+
+        Collections.sort(candidates, new Comparator<Map.Entry<Long, SpillableByteStore>>() {
+            @Override
+            public int compare(Map.Entry<Long, SpillableByteStore> a, Map.Entry<Long, SpillableByteStore> b) {
+                return Long.compare(a.getKey(), b.getKey());
+            }
+        });
+
+        long total = 0;
+
+        try {
+
+            for (Map.Entry<Long, SpillableByteStore> candidate : candidates) {
+
+                if (residentSize.get() <= maxResidentSize)
+                    break;
+
+                long released = candidate.getValue().spill();
+                if (released > 0) {
+                    residentSize.addAndGet(-released);
+                    spills.incrementAndGet();
+                    total += released;
+                }
+            }
+
+        } catch (IOException e) {
+            logger.error("could not spill content to disk", e);
+        }
+
+        return total;
+    }
+
+    public static class Config {
+
+        public final long maxResidentSize;
+        public final File spillDirectory;
+
+        public Config() {
+            maxResidentSize = 256 * 1024 * 1024;
+            spillDirectory = null;
+        }
+
+        public Config(long maxResidentSize, File spillDirectory) {
+            this.maxResidentSize = maxResidentSize;
+            this.spillDirectory = spillDirectory;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package jdbox.content.bytestores;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Serves reads from an existing file, the file is left in place once the store is closed.
+ */
+public class ReadOnlyFileByteStore implements ByteStore {
+
+    private final FileChannel channel;
+    private final long size;
+
+    public ReadOnlyFileByteStore(File file) throws IOException {
+        channel = new RandomAccessFile(file, "r").getChannel();
+        size = channel.size();
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (offset >= size)
+            return 0;
+
+        count = (int) Math.min(count, size - offset);
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+
+        try {
+            int read = 0;
+            while (read < count) {
+                int n = channel.read(buffer, offset + read);
+                if (n < 0)
+                    throw new IOException("file has been truncated");
+                read += n;
+            }
+        } finally {
+            buffer.limit(limit);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer, long offset, int count) throws IOException {
+        throw new UnsupportedOperationException("write is not supported");
+    }
+
+    @Override
+    public void truncate(long offset) throws IOException {
+        throw new UnsupportedOperationException("truncate is not supported");
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,9 @@
+package jdbox.content.bytestores;
+
+/**
+ * A byte store that keeps its content in memory.
+ */
+interface ResidentByteStore extends ByteStore {
+
+    long getResidentSize();
+}
@@ -0,0 +1,146 @@
+package jdbox.content.bytestores;
+
+import com.google.inject.Inject;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process wide pool of direct buffers (slabs) that back in-memory byte stores. Slabs are grouped by their size,
+ * released slabs are kept for reuse until the pool holds config.maxPooledSlabs of them, the rest are left to GC.
+ * Slabs are always handed out zero filled.
+ * This class is thread safe and does not block.
+ */
+public class SlabPool {
+
+    public static Config defaultConfig = new Config();
+
+    private static final byte[] zeros = new byte[4 * 1024];
+
+    private final ConcurrentMap<Integer, Queue<ByteBuffer>> slabs = new ConcurrentHashMap<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private volatile Config config;
+
+    @Inject
+    public SlabPool(Config config) {
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public int getPooled() {
+        return pooled.get();
+    }
+
+    public ByteBuffer acquire(int size) {
+
+        outstanding.incrementAndGet();
+
+        ByteBuffer slab = getQueue(size).poll();
+
+        if (slab == null) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        pooled.decrementAndGet();
+        hits.incrementAndGet();
+
+        slab.clear();
+        putZeros(slab, size);
+        slab.clear();
+
+        return slab;
+    }
+
+    public void release(ByteBuffer slab) {
+
+        outstanding.decrementAndGet();
+
+        if (pooled.incrementAndGet() > config.maxPooledSlabs) {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        getQueue(slab.capacity()).offer(slab);
+    }
+
+    /**
+     * Drops all pooled slabs, they are left to GC.
+     *
+     * @return The number of bytes dropped.
+     */
+    public long drain() {
+
+        long drained = 0;
+
+        for (Queue<ByteBuffer> queue : slabs.values()) {
+            ByteBuffer slab;
+            while ((slab = queue.poll()) != null) {
+                pooled.decrementAndGet();
+                drained += slab.capacity();
+            }
+        }
+
+        return drained;
+    }
+
+    static void putZeros(ByteBuffer buffer, int count) {
+        while (count > 0) {
+            int n = Math.min(count, zeros.length);
+            buffer.put(zeros, 0, n);
+            count -= n;
+        }
+    }
+
+    private Queue<ByteBuffer> getQueue(int size) {
+
+        Queue<ByteBuffer> queue = slabs.get(size);
+
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<>();
+            Queue<ByteBuffer> existing = slabs.putIfAbsent(size, queue);
+            if (existing != null)
+                queue = existing;
+        }
+
+        return queue;
+    }
+
+    public static class Config {
+
+        public final int maxPooledSlabs;
+
+        public Config() {
+            maxPooledSlabs = 1024;
+        }
+
+        public Config(int maxPooledSlabs) {
+            this.maxPooledSlabs = maxPooledSlabs;
+        }
+    }
+}
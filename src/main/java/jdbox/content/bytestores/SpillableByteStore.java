@@ -0,0 +1,152 @@
+package jdbox.content.bytestores;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps content in memory until the budget asks to spill it, after that the content lives in a file. Changes of the
+ * resident size are reported to the budget outside of the store lock, so that the budget is free to spill other
+ * stores.
+ */
+class SpillableByteStore implements ByteStore {
+
+    private final MemoryBudget budget;
+
+    private ByteStore delegate;
+    private ResidentByteStore resident;
+    private long accounted = 0;
+    private volatile long lastAccess = System.nanoTime();
+
+    SpillableByteStore(MemoryBudget budget, ResidentByteStore resident) {
+        this.budget = budget;
+        this.delegate = resident;
+        this.resident = resident;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public synchronized boolean isSpilled() {
+        return delegate != null && resident == null;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        int read;
+        long delta;
+
+        synchronized (this) {
+            lastAccess = System.nanoTime();
+            read = getDelegate().read(buffer, offset, count);
+            delta = account();
+        }
+
+        budget.update(delta);
+
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        int written;
+        long delta;
+
+        synchronized (this) {
+            lastAccess = System.nanoTime();
+            written = getDelegate().write(buffer, offset, count);
+            delta = account();
+        }
+
+        budget.update(delta);
+
+        return written;
+    }
+
+    @Override
+    public void truncate(long offset) throws IOException {
+
+        long delta;
+
+        synchronized (this) {
+            lastAccess = System.nanoTime();
+            getDelegate().truncate(offset);
+            delta = account();
+        }
+
+        budget.update(delta);
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return delegate != null ? delegate.getSize() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        long delta;
+
+        synchronized (this) {
+
+            if (delegate == null)
+                return;
+
+            delegate.close();
+            delegate = null;
+            resident = null;
+
+            delta = -accounted;
+            accounted = 0;
+        }
+
+        budget.untrack(this, delta);
+    }
+
+    /**
+     * @return the number of bytes released from memory.
+     */
+    synchronized long spill() throws IOException {
+
+        if (resident == null)
+            return 0;
+
+        FileByteStore file = budget.createSpillStore();
+
+        try {
+            ByteSources.copy(resident, file);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        resident.close();
+        resident = null;
+        delegate = file;
+
+        long released = accounted;
+        accounted = 0;
+
+        return released;
+    }
+
+    private ByteStore getDelegate() throws IOException {
+        if (delegate == null)
+            throw new IOException("operation on a closed ByteStore");
+        return delegate;
+    }
+
+    private long account() {
+
+        if (resident == null)
+            return 0;
+
+        long current = resident.getResidentSize();
+        long delta = current - accounted;
+        accounted = current;
+
+        return delta;
+    }
+}
@@ -0,0 +1,16 @@
+package jdbox.content.bytestores;
+
+import java.io.IOException;
+
+public interface SyncableByteStore extends ByteStore {
+
+    /**
+     * Makes all writes done so far visible to other readers of the underlying content.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Makes all writes done so far durable, what durable means is up to the implementation.
+     */
+    void sync() throws IOException;
+}
@@ -0,0 +1,103 @@
+package jdbox.content.bytestores;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Gathers contiguous small writes in a buffer and passes them to the underlying store as a single write. The buffer is
+ * flushed on a non-contiguous write, on a read that touches the buffered region or lies beyond the end of the
+ * underlying store, on truncate, on flush and on close. Writes that are at least as large as the buffer bypass it.
+ */
+public class WriteGatheringByteStore implements SyncableByteStore {
+
+    private final ByteStore store;
+    private final ByteBuffer pending;
+    private long pendingOffset;
+
+    public WriteGatheringByteStore(ByteStore store, int bufferSize) {
+        this.store = store;
+        this.pending = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (pending.position() != 0 && (
+                offset < pendingOffset + pending.position() && offset + count > pendingOffset ||
+                offset + count > store.getSize()))
+            flush();
+
+        return store.read(buffer, offset, count);
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer buffer, long offset, int count) throws IOException {
+
+        if (pending.position() != 0 &&
+                (offset != pendingOffset + pending.position() || count > pending.remaining()))
+            flush();
+
+        if (count >= pending.capacity())
+            return store.write(buffer, offset, count);
+
+        if (pending.position() == 0)
+            pendingOffset = offset;
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+        pending.put(buffer);
+        buffer.limit(limit);
+
+        return count;
+    }
+
+    @Override
+    public synchronized void truncate(long offset) throws IOException {
+        flush();
+        store.truncate(offset);
+    }
+
+    @Override
+    public synchronized long getSize() {
+        if (pending.position() == 0)
+            return store.getSize();
+        return Math.max(store.getSize(), pendingOffset + pending.position());
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+
+        if (pending.position() == 0)
+            return;
+
+        int count = pending.position();
+        pending.flip();
+
+        int written = 0;
+        try {
+            while (written < count)
+                written += store.write(pending, pendingOffset + written, count - written);
+        } catch (IOException e) {
+            // keep whatever has not made it to the store, so that it is retried on the next flush
+            pending.compact();
+            pendingOffset += written;
+            throw e;
+        }
+
+        pending.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -3,11 +3,14 @@ package jdbox.content.filetypes;
 import com.google.inject.Inject;
 import jdbox.content.ByteStreamReader;
 import jdbox.content.PackagePrivate;
+import jdbox.content.bytestores.ByteSources;
 import jdbox.content.bytestores.ByteStore;
 import jdbox.content.bytestores.InMemoryByteStoreFactory;
+import jdbox.content.pinned.PinnedContent;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.Field;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -21,16 +24,18 @@ public class FullAccessOpenedFileFactory implements OpenedFileFactory {
 
     private final DriveAdapter drive;
     private final InMemoryByteStoreFactory tempStoreFactory;
+    private final PinnedContent pinnedContent;
     private final Executor executor;
 
     private volatile Config config;
 
     @Inject
     FullAccessOpenedFileFactory(
-            DriveAdapter drive, InMemoryByteStoreFactory tempStoreFactory,
+            DriveAdapter drive, InMemoryByteStoreFactory tempStoreFactory, PinnedContent pinnedContent,
             @PackagePrivate Executor executor, Config config) {
         this.drive = drive;
         this.tempStoreFactory = tempStoreFactory;
+        this.pinnedContent = pinnedContent;
         this.executor = executor;
         this.config = config;
     }
@@ -40,14 +45,14 @@ public class FullAccessOpenedFileFactory implements OpenedFileFactory {
     }
 
     @Override
-    public long getSize(File file) {
-        return file.getSize();
+    public long getSize(FileAttributes attributes) {
+        return attributes.getSize();
     }
 
     @Override
     public synchronized ByteStore create(File file) throws IOException {
         ByteStore result = tempStoreFactory.create();
-        if (file.getId().isSet() && file.getSize() > 0) {
+        if (file.getId().isSet() && file.getSize() > 0 && !copyPinnedContent(file, result)) {
             Future<InputStream> stream = drive.downloadFileRangeAsync(
                     file.toDaFile(EnumSet.of(Field.DOWNLOAD_URL)), 0, 0, executor);
             ByteStreamReader bsr = new ByteStreamReader(stream, result, config.bufferSize);
@@ -56,6 +61,22 @@ public class FullAccessOpenedFileFactory implements OpenedFileFactory {
         return result;
     }
 
+    private boolean copyPinnedContent(File file, ByteStore result) throws IOException {
+
+        ByteStore pinned = pinnedContent.open(file.getMd5Sum());
+        if (pinned == null)
+            return false;
+
+        try (ByteStore source = pinned) {
+            ByteSources.copy(source, result);
+        } catch (IOException e) {
+            result.close();
+            throw e;
+        }
+
+        return true;
+    }
+
     public static class Config {
 
         public final int bufferSize;
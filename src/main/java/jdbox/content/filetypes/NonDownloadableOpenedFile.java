@@ -27,9 +27,13 @@ class NonDownloadableOpenedFile extends AutoGeneratedContentByteStore {
     }
 
     public static String getContent(File file) {
+        return getContent(file.getName(), file.getAlternateLink());
+    }
+
+    public static String getContent(String name, String alternateLink) {
         return contentTemplate
-                .replace("{name}", file.getName())
-                .replace("{href}", file.getAlternateLink());
+                .replace("{name}", name)
+                .replace("{href}", alternateLink);
     }
 }
 
@@ -1,12 +1,14 @@
 package jdbox.content.filetypes;
 
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 
 public class NonDownloadableOpenedFileFactory implements OpenedFileFactory {
 
     @Override
-    public long getSize(File file) {
-        return NonDownloadableOpenedFile.getContent(file).length();
+    public long getSize(FileAttributes attributes) {
+        return NonDownloadableOpenedFile.getContent(attributes.getName(), attributes.getAlternateLink())
+                .getBytes().length;
     }
 
     @Override
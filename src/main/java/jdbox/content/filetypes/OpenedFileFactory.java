@@ -2,12 +2,13 @@ package jdbox.content.filetypes;
 
 import jdbox.content.bytestores.ByteStore;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 
 import java.io.IOException;
 
 public interface OpenedFileFactory {
 
-    long getSize(File file);
+    long getSize(FileAttributes attributes);
 
     ByteStore create(File file) throws IOException;
 }
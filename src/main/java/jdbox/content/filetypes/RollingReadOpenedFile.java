@@ -103,7 +103,7 @@ class RollingReadOpenedFile implements ByteStore {
             if (desiredLength < maxPageSize)
                 desiredLength *= 2;
             long rightBoundary = nextEntry == null ? size : nextEntry.offset;
-            createReader(entry.rightOffset, desiredLength, (int) (rightBoundary - entry.rightOffset));
+            createReader(entry.rightOffset, desiredLength, rightBoundary - entry.rightOffset);
         }
 
         return entry;
@@ -117,13 +117,13 @@ class RollingReadOpenedFile implements ByteStore {
 
         Readers.Entry ceilingEntry = readers.ceiling(offset);
         if (ceilingEntry == null)
-            return createReader(offset, minPageSize, (int) (size - offset));
+            return createReader(offset, minPageSize, size - offset);
 
-        return createReader(offset, minPageSize, (int) (ceilingEntry.offset - offset));
+        return createReader(offset, minPageSize, ceilingEntry.offset - offset);
     }
 
-    private Readers.Entry createReader(long offset, int desiredLength, int maxLength) {
-        int length = (desiredLength * MAX_STRETCH_FACTOR > maxLength) ? maxLength : desiredLength;
+    private Readers.Entry createReader(long offset, int desiredLength, long maxLength) {
+        int length = (desiredLength * MAX_STRETCH_FACTOR > maxLength) ? (int) maxLength : desiredLength;
         return readers.create(offset, length);
     }
 
@@ -9,6 +9,7 @@ import jdbox.content.bytestores.InMemoryByteStoreFactory;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.Field;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,8 +43,8 @@ public class RollingReadOpenedFileFactory implements OpenedFileFactory {
     }
 
     @Override
-    public long getSize(File file) {
-        return file.getSize();
+    public long getSize(FileAttributes attributes) {
+        return attributes.getSize();
     }
 
     @Override
@@ -110,9 +111,14 @@ public class RollingReadOpenedFileFactory implements OpenedFileFactory {
             if (destination == null)
                 return;
 
-            destination = null;
+            ByteStore destination = this.destination;
+            this.destination = null;
 
-            reader.close();
+            try {
+                reader.close();
+            } finally {
+                destination.close();
+            }
         }
     }
 }
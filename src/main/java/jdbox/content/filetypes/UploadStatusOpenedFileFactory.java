@@ -3,6 +3,7 @@ package jdbox.content.filetypes;
 import com.google.inject.Inject;
 import jdbox.content.bytestores.ByteStore;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 import jdbox.uploader.Uploader;
 
 public class UploadStatusOpenedFileFactory implements OpenedFileFactory {
@@ -15,8 +16,8 @@ public class UploadStatusOpenedFileFactory implements OpenedFileFactory {
     }
 
     @Override
-    public long getSize(File file) {
-        return UploadStatusOpenedFile.getContent(uploader).length();
+    public long getSize(FileAttributes attributes) {
+        return UploadStatusOpenedFile.getContent(uploader).getBytes().length;
     }
 
     @Override
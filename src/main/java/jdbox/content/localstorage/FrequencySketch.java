@@ -0,0 +1,90 @@
+package jdbox.content.localstorage;
+
+/**
+ * A count-min sketch of access frequencies with 4-bit counters, depth 4. Each long of the table holds 16 counters,
+ * an item is counted in 4 of them, each one in a different long. Once the number of increments reaches 10 times the
+ * table size, all counters are halved, so that the sketch forgets old history.
+ * This class is not thread safe, external synchronization is required.
+ */
+class FrequencySketch {
+
+    private static final long[] seeds = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long resetMask = 0x7777777777777777L;
+    private static final long oneMask = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    public FrequencySketch(int capacity) {
+        int length = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * length;
+    }
+
+    public int frequency(int hash) {
+
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        int frequency = 15;
+
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            frequency = Math.min(frequency, (int) ((table[indexOf(item, i)] >>> offset) & 0xfL));
+        }
+
+        return frequency;
+    }
+
+    public void increment(int hash) {
+
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(indexOf(item, i), start + i);
+
+        if (added && ++additions == sampleSize)
+            reset();
+    }
+
+    private boolean incrementAt(int index, int counter) {
+
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+
+        if ((table[index] & mask) == mask)
+            return false;
+
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    private void reset() {
+
+        int odd = 0;
+
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & oneMask);
+            table[i] = (table[i] >>> 1) & resetMask;
+        }
+
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + seeds[i]) * seeds[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
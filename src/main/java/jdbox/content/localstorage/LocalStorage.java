@@ -1,61 +1,160 @@
 package jdbox.content.localstorage;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
+import jdbox.OperationContext;
+import jdbox.content.LowPriority;
+import jdbox.content.OpenedFile;
+import jdbox.content.PackagePrivate;
 import jdbox.content.bytestores.ByteSources;
 import jdbox.content.bytestores.ByteStore;
 import jdbox.content.bytestores.InMemoryByteStoreFactory;
+import jdbox.content.bytestores.SyncableByteStore;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.Field;
+import jdbox.filetree.RemoteFileChangeEvent;
 import jdbox.localstate.LocalState;
 import jdbox.localstate.interfaces.LocalUpdate;
+import jdbox.localstate.interfaces.LocalUpdateSafe;
 import jdbox.localstate.knownfiles.KnownFile;
 import jdbox.localstate.knownfiles.KnownFiles;
 import jdbox.models.File;
 import jdbox.models.fileids.FileId;
 import jdbox.models.fileids.FileIdStore;
+import jdbox.uploader.ConflictException;
 import jdbox.uploader.DriveTask;
 import jdbox.uploader.Uploader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LocalStorage {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalStorage.class);
 
+    // retained content of files opened at least this many times recently is refreshed once it is changed remotely
+    private static final int hotFrequency = 2;
+
+    public static Config defaultConfig = new Config();
+
+    public enum DurabilityPolicy {
+        // content is uploaded once the last writer releases the file
+        ASYNC,
+        // as ASYNC, plus fsync blocks until the content is uploaded
+        UPLOAD_ON_FSYNC,
+        // as ASYNC, plus content is uploaded once no writes happened for config.quietPeriod
+        DEBOUNCED
+    }
+
     private final FileIdStore fileIdStore;
     private final DriveAdapter drive;
     private final InMemoryByteStoreFactory tempStoreFactory;
     private final LocalState localState;
+    private final ScheduledExecutorService scheduler;
+    private final Executor lowPriorityExecutor;
+    private final Observable<RemoteFileChangeEvent> remoteFileChangeEvent;
     private final Map<FileId, SharedOpenedFile> files = new HashMap<>();
 
+    private final RetainedContent retained = new RetainedContent();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private volatile Config config;
+    private volatile Subscription remoteFileChangeEventSubscription;
+
     @Inject
     LocalStorage(
             FileIdStore fileIdStore, DriveAdapter drive,
-            InMemoryByteStoreFactory tempStoreFactory, LocalState localState) {
+            InMemoryByteStoreFactory tempStoreFactory, LocalState localState,
+            @PackagePrivate ScheduledExecutorService scheduler, @LowPriority Executor lowPriorityExecutor,
+            Observable<RemoteFileChangeEvent> remoteFileChangeEvent, Config config) {
         this.fileIdStore = fileIdStore;
         this.drive = drive;
         this.tempStoreFactory = tempStoreFactory;
         this.localState = localState;
+        this.scheduler = scheduler;
+        this.lowPriorityExecutor = lowPriorityExecutor;
+        this.remoteFileChangeEvent = remoteFileChangeEvent;
+        this.config = config;
     }
 
-    public void reset() {
+    public void init() {
+        remoteFileChangeEventSubscription = remoteFileChangeEvent.subscribe(new Action1<RemoteFileChangeEvent>() {
+            @Override
+            public void call(RemoteFileChangeEvent event) {
+                if (validateRetained(event.fileId, event.file != null ? event.file.getMd5Sum() : null))
+                    refresh(event.file);
+            }
+        });
+    }
+
+    public void tearDown() {
+        if (remoteFileChangeEventSubscription != null)
+            remoteFileChangeEventSubscription.unsubscribe();
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public synchronized void reset() {
         files.clear();
+        for (RetainedContent.Entry entry : retained.clear())
+            close(entry.content);
+    }
+
+    /**
+     * Closes all retained content.
+     *
+     * @return The number of bytes released.
+     */
+    public synchronized long dropRetained() {
+        long size = retained.getSize();
+        for (RetainedContent.Entry entry : retained.clear())
+            close(entry.content);
+        return size;
     }
 
     public synchronized int getFilesCount() {
         return files.size();
     }
 
+    public synchronized int getRetainedFilesCount() {
+        return retained.getCount();
+    }
+
+    public synchronized double getRetainedHitRatio() {
+        return retained.getHitRatio();
+    }
+
+    /**
+     * @return The number of times content has not been retained because other content is accessed more often.
+     */
+    public synchronized long getRetainedRejectionCount() {
+        return retained.getRejections();
+    }
+
     public synchronized Long getSize(FileId fileId) {
         SharedOpenedFile shared = files.get(fileId);
         if (shared == null)
@@ -63,27 +162,485 @@ public class LocalStorage {
         return files.get(fileId).content.getSize();
     }
 
-    public synchronized ByteStore getContent(FileId fileId) {
+    /**
+     * @param handler The file handler the content is opened under.
+     * @param releaseHandler Called once, when the returned content is closed.
+     * @return The content opened under the given handler or null if there is no such content locally.
+     */
+    public synchronized OpenedFile getContent(File file, long handler, Runnable releaseHandler) {
 
+        FileId fileId = file.getId();
         SharedOpenedFile shared = files.get(fileId);
 
-        if (shared == null)
-            return null;
+        if (shared == null) {
+
+            RetainedContent.Entry cached = retained.acquire(fileId);
+
+            if (cached == null)
+                return null;
+
+            if (file.getMd5Sum() == null || !file.getMd5Sum().equals(cached.md5)) {
+                logger.debug("discarding retained content of {}, it is outdated", file);
+                close(cached.content);
+                return null;
+            }
+
+            shared = new SharedOpenedFile(fileId, cached.content, cached.md5);
+            files.put(fileId, shared);
+        }
 
         shared.refCount++;
 
-        return new ContentUpdatingProxyOpenedFile(shared);
+        return new ContentUpdatingProxyOpenedFile(shared, handler, releaseHandler);
     }
 
-    public synchronized ByteStore putContent(FileId fileId, ByteStore content) {
+    /**
+     * Looks for retained content of any file with the given md5. The content is copied without holding the monitor,
+     * it is taken out of the retained content meanwhile, so that it is neither closed nor opened by anyone else.
+     *
+     * @return A copy of the content or null if there is no such content.
+     */
+    public ByteStore copyContent(String md5) throws IOException {
 
-        SharedOpenedFile shared = new SharedOpenedFile(fileId, content);
+        if (md5 == null)
+            return null;
+
+        RetainedContent.Entry cached;
+
+        synchronized (this) {
+
+            cached = retained.get(md5);
+
+            if (cached == null)
+                return null;
+
+            retained.remove(cached.fileId);
+        }
+
+        logger.debug("found content with md5 {} retained for {}", md5, cached.fileId);
+
+        ByteStore copy = tempStoreFactory.create();
+
+        try {
+            ByteSources.copy(cached.content, copy);
+        } catch (IOException e) {
+            copy.close();
+            throw e;
+        } finally {
+            restoreRetained(cached);
+        }
+
+        return copy;
+    }
+
+    private synchronized void restoreRetained(RetainedContent.Entry entry) {
+
+        // the file has been opened or refreshed while its content has been copied
+        if (isKnown(entry.fileId)) {
+            close(entry.content);
+            return;
+        }
+
+        for (RetainedContent.Entry evicted : retained.put(entry, config.retainedCacheSize))
+            close(evicted.content);
+    }
+
+    public synchronized OpenedFile putContent(File file, ByteStore content, long handler, Runnable releaseHandler) {
+
+        FileId fileId = file.getId();
+        SharedOpenedFile shared = new SharedOpenedFile(fileId, content, file.getMd5Sum());
 
         files.put(fileId, shared);
 
         shared.refCount++;
 
-        return new ContentUpdatingProxyOpenedFile(shared);
+        return new ContentUpdatingProxyOpenedFile(shared, handler, releaseHandler);
+    }
+
+    private synchronized void release(SharedOpenedFile shared) {
+
+        assert shared.refCount > 0;
+        shared.refCount--;
+        if (shared.refCount != 0)
+            return;
+
+        files.remove(shared.fileId);
+
+        synchronized (shared) {
+            shared.released = true;
+        }
+
+        long size = shared.content.getSize();
+        long maxSize = config.retainedCacheSize;
+
+        if (shared.md5 == null || size > maxSize) {
+            close(shared.content);
+            return;
+        }
+
+        RetainedContent.Entry entry = new RetainedContent.Entry(shared.fileId, shared.md5, shared.content, size);
+
+        for (RetainedContent.Entry evicted : retained.put(entry, maxSize))
+            close(evicted.content);
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return Whether outdated content has been discarded and it had been accessed often enough to be refreshed.
+     */
+    private synchronized boolean validateRetained(FileId fileId, String md5) {
+
+        RetainedContent.Entry cached = retained.peek(fileId);
+
+        if (cached == null || md5 != null && md5.equals(cached.md5))
+            return false;
+
+        logger.debug("discarding retained content of {}, it has been changed remotely", fileId);
+        retained.remove(fileId);
+        close(cached.content);
+
+        return md5 != null && retained.frequency(fileId) >= hotFrequency;
+    }
+
+    /**
+     * Downloads the file's content in background and retains it, so that the next open does not wait for it.
+     */
+    private void refresh(final File file) {
+
+        if (file.getDownloadUrl() == null || file.getSize() > config.retainedCacheSize)
+            return;
+
+        lowPriorityExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    retainDownloaded(file);
+                } catch (IOException e) {
+                    logger.warn("could not refresh content of {}", file, e);
+                }
+            }
+        });
+    }
+
+    private void retainDownloaded(File file) throws IOException {
+
+        if (isKnown(file.getId()))
+            return;
+
+        logger.debug("refreshing content of {}", file);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        ByteStore content = tempStoreFactory.create();
+
+        try (InputStream stream = new DigestInputStream(
+                drive.downloadFileRange(file.toDaFile(EnumSet.of(Field.DOWNLOAD_URL)), 0, 0), digest)) {
+
+            byte[] buffer = new byte[16 * 1024];
+            long offset = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                content.write(ByteBuffer.wrap(buffer, 0, read), offset, read);
+                offset += read;
+            }
+
+        } catch (IOException e) {
+            content.close();
+            throw e;
+        }
+
+        // the content is labeled with its actual md5, it might have been changed once again during the download
+        String md5 = toHex(digest.digest());
+
+        synchronized (this) {
+
+            if (isKnown(file.getId())) {
+                close(content);
+                return;
+            }
+
+            RetainedContent.Entry entry = new RetainedContent.Entry(file.getId(), md5, content, content.getSize());
+
+            for (RetainedContent.Entry evicted : retained.put(entry, config.retainedCacheSize))
+                close(evicted.content);
+        }
+
+        refreshes.incrementAndGet();
+    }
+
+    private synchronized boolean isKnown(FileId fileId) {
+        return files.containsKey(fileId) || retained.peek(fileId) != null;
+    }
+
+    private static void close(ByteStore content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            logger.error("an error occured while closing content", e);
+        }
+    }
+
+    /**
+     * Submits an upload of the current content, unless the latest version has been submitted already.
+     *
+     * @return The future of the latest submitted upload or null if nothing has ever been submitted.
+     */
+    private ListenableFuture<Void> upload(final SharedOpenedFile shared) throws IOException {
+
+        // the local state is updated without holding the monitor of shared, release takes it while holding ours
+        synchronized (shared.submissionLock) {
+
+            final long version;
+            final ByteStore capturedContent;
+            final long size;
+
+            synchronized (shared) {
+
+                version = shared.version.get();
+
+                if (shared.released || version == shared.submittedVersion)
+                    return shared.lastUpload;
+
+                capturedContent = tempStoreFactory.create();
+
+                try {
+                    size = ByteSources.copy(shared.content, capturedContent);
+                } catch (IOException e) {
+                    close(capturedContent);
+                    throw e;
+                }
+            }
+
+            final SettableFuture<Void> upload = SettableFuture.create();
+
+            try {
+                submitUpload(shared, capturedContent, size, upload);
+            } catch (IOException | RuntimeException e) {
+                close(capturedContent);
+                throw e;
+            }
+
+            synchronized (shared) {
+                shared.submittedVersion = version;
+                shared.lastUpload = upload;
+            }
+
+            return upload;
+        }
+    }
+
+    private void submitUpload(
+            final SharedOpenedFile shared, final ByteStore capturedContent, final long size,
+            final SettableFuture<Void> upload) throws IOException {
+
+        localState.update(new LocalUpdate() {
+            @Override
+            public Void run(KnownFiles knownFiles, final Uploader uploader) throws IOException {
+
+                MessageDigest digest;
+                try {
+                    digest = MessageDigest.getInstance("MD5");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                }
+
+                final InputStream inputStream = ByteSources.toInputStream(capturedContent);
+
+                byte[] buffer = new byte[1024];
+                int read;
+                do {
+                    read = inputStream.read(buffer);
+                    if (read > 0)
+                        digest.update(buffer, 0, read);
+                } while (read != -1);
+
+                inputStream.reset();
+
+                final KnownFile existing = knownFiles.get(shared.fileId);
+                assert existing != null;
+                File original = existing.toFile();
+
+                final String md5 = toHex(digest.digest());
+                existing.setContentProperties(size, md5);
+                shared.md5 = md5;
+
+                KnownFile source = size >= config.minCopySize && existing.isCreatedEmpty() ?
+                        findCopySource(knownFiles, uploader, existing, md5) : null;
+                existing.setCreatedEmpty(false);
+                final File copySource = source != null ? source.toFile() : null;
+                final File target = existing.toFile();
+
+                uploader.submit(new DriveTask(
+                        fileIdStore, drive, "update content, content length is " + size,
+                        original, existing.toFile(), EnumSet.noneOf(Field.class)) {
+                    @Override
+                    public jdbox.driveadapter.File run(jdbox.driveadapter.File file) throws IOException {
+
+                        jdbox.driveadapter.File updatedFile = null;
+
+                        if (copySource != null)
+                            updatedFile = tryCopy(copySource, target, file, md5, existing, uploader);
+
+                        if (updatedFile == null)
+                            updatedFile = drive.updateFileContent(file, inputStream);
+
+                        return updatedFile;
+                    }
+
+                    @Override
+                    public String run(String etag) throws ConflictException, IOException {
+
+                        String updatedEtag;
+
+                        try {
+                            updatedEtag = super.run(etag);
+                        } catch (ConflictException | RuntimeException e) {
+                            // the task is not retried after these
+                            close(capturedContent);
+                            upload.setException(e);
+                            throw e;
+                        }
+
+                        close(capturedContent);
+                        upload.set(null);
+
+                        return updatedEtag;
+                    }
+                });
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * A file with the same content that is already in the cloud can be copied on the server side instead of uploading
+     * the content. Copying gives the file a new id and deletes the original, that is why it is done only for files
+     * that have been created empty by this session and so have never been seen by anyone but us, such as targets of
+     * cp.
+     */
+    private static KnownFile findCopySource(
+            KnownFiles knownFiles, Uploader uploader, KnownFile target, String md5) {
+
+        for (KnownFile candidate : knownFiles.getByMd5(md5)) {
+            if (candidate != target && !candidate.isDirectory() && candidate.getId().isSet() &&
+                    candidate != knownFiles.getUploadFailureNotificationFile() &&
+                    !uploader.fileIsQueued(candidate.getId()))
+                return candidate;
+        }
+
+        return null;
+    }
+
+    /**
+     * Substitutes the file with a server side copy of the source. The copy gets the dates of the file. The file must
+     * have been created empty by this session, it is deleted rather than trashed, it would be left in the trash
+     * otherwise.
+     *
+     * @return The copy or null if the content has to be uploaded.
+     */
+    private jdbox.driveadapter.File tryCopy(
+            File source, File target, jdbox.driveadapter.File file, String md5, final KnownFile existing,
+            Uploader uploader) throws IOException {
+
+        jdbox.driveadapter.File copied;
+
+        Uploader.IdAssignment idAssignment = uploader.beginIdAssignment();
+
+        try {
+
+            try {
+                copied = drive.copyFile(source.toDaFile(), target.toDaFile(EnumSet.of(
+                        Field.NAME, Field.PARENT_IDS, Field.MODIFIED_DATE, Field.ACCESSED_DATE)));
+            } catch (IOException e) {
+                logger.warn("could not copy {}, falling back to upload", source, e);
+                return null;
+            }
+
+            if (!md5.equals(copied.getMd5Sum())) {
+                logger.warn("copy of {} has unexpected md5 {}, falling back to upload", source, copied.getMd5Sum());
+                drive.deleteFile(copied);
+                return null;
+            }
+
+            try {
+
+                // a copy may be given the current time as its modification date regardless of the requested one
+                if (target.getModifiedDate() != null && !target.getModifiedDate().equals(copied.getModifiedDate())) {
+                    jdbox.driveadapter.File dates =
+                            target.toDaFile(EnumSet.of(Field.MODIFIED_DATE, Field.ACCESSED_DATE));
+                    dates.setId(copied.getId());
+                    dates.setEtag(copied.getEtag());
+                    copied = drive.updateFile(dates);
+                }
+
+                drive.deleteFile(file);
+
+            } catch (IOException e) {
+                drive.deleteFile(copied);
+                throw e;
+            }
+
+            logger.debug("{} has been substituted with a copy of {}", file, source);
+
+            fileIdStore.replace(target.getId(), copied.getId());
+
+        } finally {
+            idAssignment.close();
+        }
+
+        final jdbox.driveadapter.File copy = copied;
+
+        localState.update(new LocalUpdateSafe() {
+            @Override
+            public void run(KnownFiles knownFiles, Uploader uploader) {
+                existing.setRemoteProperties(copy.getMimeType(), copy.getDownloadUrl(), copy.getAlternateLink());
+            }
+        });
+
+        return copy;
+    }
+
+    private void scheduleUpload(final SharedOpenedFile shared, long delay) {
+
+        if (!shared.uploadScheduled.compareAndSet(false, true))
+            return;
+
+        final OperationContext ctx = OperationContext.get();
+
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+
+                shared.uploadScheduled.set(false);
+
+                long quietPeriod = TimeUnit.MILLISECONDS.toNanos(config.quietPeriod);
+                long elapsed = System.nanoTime() - shared.lastWrite;
+
+                if (elapsed < quietPeriod) {
+                    scheduleUpload(shared, quietPeriod - elapsed);
+                    return;
+                }
+
+                OperationContext.restore(ctx);
+
+                try {
+                    upload(shared);
+                } catch (IOException e) {
+                    logger.error("an error occured while uploading content", e);
+                } finally {
+                    OperationContext.clear();
+                }
+            }
+        }, delay, TimeUnit.NANOSECONDS);
     }
 
     private class SharedOpenedFile {
@@ -92,27 +649,53 @@ public class LocalStorage {
         public final ByteStore content;
         public volatile int refCount = 0;
 
-        private SharedOpenedFile(FileId fileId, ByteStore content) {
+        // md5 of the content as it is known in the cloud, once all submitted uploads are complete
+        public volatile String md5;
+
+        // incremented on every modification of the content
+        public final AtomicLong version = new AtomicLong();
+        public volatile long lastWrite;
+        public final AtomicBoolean uploadScheduled = new AtomicBoolean(false);
+
+        // serializes submissions of uploads, so that they are queued in the order of captured versions
+        public final Object submissionLock = new Object();
+
+        // guarded by this
+        public long submittedVersion = 0;
+        public ListenableFuture<Void> lastUpload;
+        public boolean released = false;
+
+        private SharedOpenedFile(FileId fileId, ByteStore content, String md5) {
             this.fileId = fileId;
             this.content = content;
+            this.md5 = md5;
         }
     }
 
-    private class ContentUpdatingProxyOpenedFile implements ByteStore {
+    private class ContentUpdatingProxyOpenedFile implements OpenedFile {
 
         private final SharedOpenedFile shared;
-        private boolean hasChanged = false;
+        private final long handler;
+        private final Runnable releaseHandler;
 
-        // this flag is used to make sure that every instance is closed only once and
-        // therefore refcount is decreased only once for each instance
-        private boolean closed = false;
+        // guarded by shared, so that a modification either completes before close or fails,
+        // closed is also read without locking to reject reads on a closed instance
+        private boolean hasChanged = false;
+        private volatile boolean closed = false;
 
-        public ContentUpdatingProxyOpenedFile(SharedOpenedFile shared) {
+        public ContentUpdatingProxyOpenedFile(SharedOpenedFile shared, long handler, Runnable releaseHandler) {
             this.shared = shared;
+            this.handler = handler;
+            this.releaseHandler = releaseHandler;
         }
 
         @Override
-        public synchronized int read(ByteBuffer buffer, long offset, int count) throws IOException {
+        public long getHandler() {
+            return handler;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, long offset, int count) throws IOException {
 
             if (closed)
                 throw new IOException("read on a closed ByteStore");
@@ -121,23 +704,33 @@ public class LocalStorage {
         }
 
         @Override
-        public synchronized int write(ByteBuffer buffer, long offset, int count) throws IOException {
+        public int write(ByteBuffer buffer, long offset, int count) throws IOException {
 
-            if (closed)
-                throw new IOException("write on a closed ByteStore");
+            synchronized (shared) {
 
-            hasChanged = true;
-            return shared.content.write(buffer, offset, count);
+                if (closed)
+                    throw new IOException("write on a closed ByteStore");
+
+                hasChanged = true;
+                int written = shared.content.write(buffer, offset, count);
+                changed();
+
+                return written;
+            }
         }
 
         @Override
-        public synchronized void truncate(long offset) throws IOException {
+        public void truncate(long offset) throws IOException {
 
-            if (closed)
-                throw new IOException("truncate on a closed ByteStore");
+            synchronized (shared) {
 
-            hasChanged = true;
-            shared.content.truncate(offset);
+                if (closed)
+                    throw new IOException("truncate on a closed ByteStore");
+
+                hasChanged = true;
+                shared.content.truncate(offset);
+                changed();
+            }
         }
 
         @Override
@@ -146,88 +739,115 @@ public class LocalStorage {
         }
 
         @Override
-        public synchronized void close() throws IOException {
-
-            logger.debug("closing a proxy, has changed {}, ref count {}", hasChanged, shared.refCount);
+        public void flush() throws IOException {
 
             if (closed)
-                return;
+                throw new IOException("flush on a closed ByteStore");
 
-            closed = true;
+            if (shared.content instanceof SyncableByteStore)
+                ((SyncableByteStore) shared.content).flush();
+        }
 
-            if (!hasChanged) {
+        @Override
+        public void sync() throws IOException {
 
-                synchronized (LocalStorage.this) {
-                    assert shared.refCount > 0;
-                    shared.refCount--;
-                    if (shared.refCount == 0)
-                        files.remove(shared.fileId).content.close();
-                }
+            flush();
+
+            Config config = LocalStorage.this.config;
 
+            if (config.durabilityPolicy != DurabilityPolicy.UPLOAD_ON_FSYNC || shared.version.get() == 0)
                 return;
+
+            ListenableFuture<Void> upload = upload(shared);
+            if (upload == null)
+                return;
+
+            try {
+                upload.get(config.syncTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                throw new IOException("content has not been uploaded in time", e);
             }
+        }
 
-            final ByteStore capturedContent = tempStoreFactory.create();
-            final int size = ByteSources.copy(shared.content, capturedContent);
+        @Override
+        public void close() throws IOException {
+
+            // every instance is closed only once and therefore refcount is decreased only once for each instance
+            boolean hasChanged;
+            synchronized (shared) {
+                if (closed)
+                    return;
+                closed = true;
+                hasChanged = this.hasChanged;
+            }
 
-            localState.update(new LocalUpdate() {
-                @Override
-                public Void run(KnownFiles knownFiles, Uploader uploader) throws IOException {
+            logger.debug("closing a proxy, has changed {}, ref count {}", hasChanged, shared.refCount);
 
-                    MessageDigest digest;
-                    try {
-                        digest = MessageDigest.getInstance("MD5");
-                    } catch (NoSuchAlgorithmException e) {
-                        throw new RuntimeException(e);
-                    }
+            releaseHandler.run();
+
+            ListenableFuture<Void> upload = hasChanged ? upload(shared) : null;
 
-                    final InputStream inputStream = ByteSources.toInputStream(capturedContent);
+            if (upload == null) {
+                release(shared);
+                return;
+            }
 
-                    byte[] buffer = new byte[1024];
-                    int read;
-                    do {
-                        read = inputStream.read(buffer);
-                        if (read > 0)
-                            digest.update(buffer, 0, read);
-                    } while (read != -1);
+            // the content is kept until it is uploaded, so that it is never read from the cloud in the meantime
+            upload.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    release(shared);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
 
-                    inputStream.reset();
+        private void changed() {
 
-                    KnownFile existing = knownFiles.get(shared.fileId);
-                    assert existing != null;
-                    File original = existing.toFile();
+            shared.version.incrementAndGet();
 
-                    existing.setContentProperties(size, toHex(digest.digest()));
+            if (config.durabilityPolicy == DurabilityPolicy.DEBOUNCED) {
+                shared.lastWrite = System.nanoTime();
+                scheduleUpload(shared, TimeUnit.MILLISECONDS.toNanos(config.quietPeriod));
+            }
+        }
+    }
 
-                    uploader.submit(new DriveTask(
-                            fileIdStore, drive, "update content, content length is " + size,
-                            original, existing.toFile(), EnumSet.noneOf(Field.class)) {
-                        @Override
-                        public jdbox.driveadapter.File run(jdbox.driveadapter.File file) throws IOException {
+    private static String toHex(byte[] value) {
+        return String.format("%0" + (value.length << 1) + "x", new BigInteger(1, value));
+    }
 
-                            jdbox.driveadapter.File updatedFile = drive.updateFileContent(file, inputStream);
+    public static class Config {
 
-                            capturedContent.close();
+        public final DurabilityPolicy durabilityPolicy;
+        public final int quietPeriod;
+        public final int syncTimeout;
+        public final long retainedCacheSize;
+        public final long minCopySize;
 
-                            synchronized (LocalStorage.this) {
-                                assert shared.refCount > 0;
-                                shared.refCount--;
-                                if (shared.refCount == 0) {
-                                    files.remove(shared.fileId).content.close();
-                                }
-                            }
+        public Config() {
+            durabilityPolicy = DurabilityPolicy.ASYNC;
+            quietPeriod = 5000;
+            syncTimeout = 60000;
+            retainedCacheSize = 32 * 1024 * 1024;
+            minCopySize = 1024 * 1024;
+        }
 
-                            return updatedFile;
-                        }
-                    });
+        public Config(DurabilityPolicy durabilityPolicy, int quietPeriod, int syncTimeout) {
+            this(durabilityPolicy, quietPeriod, syncTimeout, 32 * 1024 * 1024);
+        }
 
-                    return null;
-                }
-            });
+        public Config(DurabilityPolicy durabilityPolicy, int quietPeriod, int syncTimeout, long retainedCacheSize) {
+            this(durabilityPolicy, quietPeriod, syncTimeout, retainedCacheSize, 1024 * 1024);
         }
-    }
 
-    private static String toHex(byte[] value) {
-        return String.format("%0" + (value.length << 1) + "x", new BigInteger(1, value));
+        public Config(
+                DurabilityPolicy durabilityPolicy, int quietPeriod, int syncTimeout, long retainedCacheSize,
+                long minCopySize) {
+            this.durabilityPolicy = durabilityPolicy;
+            this.quietPeriod = quietPeriod;
+            this.syncTimeout = syncTimeout;
+            this.retainedCacheSize = retainedCacheSize;
+            this.minCopySize = minCopySize;
+        }
     }
 }
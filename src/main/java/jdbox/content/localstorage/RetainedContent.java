@@ -0,0 +1,239 @@
+package jdbox.content.localstorage;
+
+import jdbox.content.bytestores.ByteStore;
+import jdbox.models.fileids.FileId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content of files that are not opened anymore, indexed by FileId and by md5.
+ * Admission follows W-TinyLFU: new entries land in a small LRU window, entries pushed out of the window are admitted
+ * to the main LRU segment only if they are accessed at least as often as the entries they would evict there. Access
+ * frequencies are kept in a sketch that also counts files that are not retained, so that files read only once, like
+ * during a backup, do not evict the working set.
+ * This class is not thread safe, external synchronization is required.
+ */
+class RetainedContent {
+
+    private static final int windowPercent = 10;
+
+    private final LinkedHashMap<FileId, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<FileId, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Entry> byMd5 = new HashMap<>();
+    private final FrequencySketch sketch;
+    private long windowSize = 0;
+    private long mainSize = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long rejections = 0;
+
+    public RetainedContent() {
+        this(1024);
+    }
+
+    public RetainedContent(int sketchCapacity) {
+        sketch = new FrequencySketch(sketchCapacity);
+    }
+
+    public int getCount() {
+        return window.size() + main.size();
+    }
+
+    public long getSize() {
+        return windowSize + mainSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return The number of entries that have not been admitted to the main segment.
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return Estimated number of recent accesses to the file, up to 15.
+     */
+    public int frequency(FileId fileId) {
+        return sketch.frequency(hash(fileId));
+    }
+
+    /**
+     * Records an access to the file and takes its content out, if there is any.
+     */
+    public Entry acquire(FileId fileId) {
+
+        sketch.increment(hash(fileId));
+
+        Entry entry = remove(fileId);
+
+        if (entry != null)
+            hits++;
+        else
+            misses++;
+
+        return entry;
+    }
+
+    public Entry peek(FileId fileId) {
+        Entry entry = window.get(fileId);
+        return entry != null ? entry : main.get(fileId);
+    }
+
+    public Entry get(String md5) {
+        Entry entry = byMd5.get(md5);
+        if (entry != null)
+            peek(entry.fileId);
+        return entry;
+    }
+
+    public Entry remove(FileId fileId) {
+
+        Entry entry = window.remove(fileId);
+
+        if (entry != null) {
+            windowSize -= entry.size;
+        } else {
+            entry = main.remove(fileId);
+            if (entry == null)
+                return null;
+            mainSize -= entry.size;
+        }
+
+        forget(entry);
+
+        return entry;
+    }
+
+    /**
+     * @return Entries that have been evicted or rejected, the caller is responsible for closing their content.
+     */
+    public List<Entry> put(Entry entry, long maxSize) {
+
+        List<Entry> evicted = new ArrayList<>();
+
+        Entry existing = remove(entry.fileId);
+        if (existing != null)
+            evicted.add(existing);
+
+        window.put(entry.fileId, entry);
+        byMd5.put(entry.md5, entry);
+        windowSize += entry.size;
+
+        long maxWindowSize = maxSize * windowPercent / 100;
+
+        Iterator<Entry> iterator = window.values().iterator();
+        while (windowSize > maxWindowSize) {
+
+            Entry candidate = iterator.next();
+            iterator.remove();
+            windowSize -= candidate.size;
+
+            if (admit(candidate, maxSize - windowSize, evicted)) {
+                main.put(candidate.fileId, candidate);
+                mainSize += candidate.size;
+            } else {
+                rejections++;
+                forget(candidate);
+                evicted.add(candidate);
+            }
+        }
+
+        iterator = main.values().iterator();
+        while (windowSize + mainSize > maxSize) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            mainSize -= eldest.size;
+            forget(eldest);
+            evicted.add(eldest);
+        }
+
+        return evicted;
+    }
+
+    public List<Entry> clear() {
+        List<Entry> removed = new ArrayList<>(window.values());
+        removed.addAll(main.values());
+        window.clear();
+        main.clear();
+        byMd5.clear();
+        windowSize = 0;
+        mainSize = 0;
+        return removed;
+    }
+
+    /**
+     * Makes room for the candidate in the main segment, unless a victim is accessed more often than the candidate.
+     */
+    private boolean admit(Entry candidate, long maxMainSize, List<Entry> evicted) {
+
+        if (candidate.size > maxMainSize)
+            return false;
+
+        int frequency = sketch.frequency(hash(candidate.fileId));
+
+        List<Entry> victims = new ArrayList<>();
+        long freed = 0;
+
+        Iterator<Entry> iterator = main.values().iterator();
+        while (mainSize - freed + candidate.size > maxMainSize) {
+            Entry victim = iterator.next();
+            if (sketch.frequency(hash(victim.fileId)) > frequency)
+                return false;
+            victims.add(victim);
+            freed += victim.size;
+        }
+
+        for (Entry victim : victims) {
+            main.remove(victim.fileId);
+            mainSize -= victim.size;
+            forget(victim);
+            evicted.add(victim);
+        }
+
+        return true;
+    }
+
+    private void forget(Entry entry) {
+        if (byMd5.get(entry.md5) == entry)
+            byMd5.remove(entry.md5);
+    }
+
+    private static int hash(FileId fileId) {
+        // FileIds are compared by identity, but the same file may get a new instance once the old one is collected
+        return fileId.isSet() ? fileId.get().hashCode() : System.identityHashCode(fileId);
+    }
+
+    public static class Entry {
+
+        public final FileId fileId;
+        public final String md5;
+        public final ByteStore content;
+        public final long size;
+
+        public Entry(FileId fileId, String md5, ByteStore content, long size) {
+            this.fileId = fileId;
+            this.md5 = md5;
+            this.content = content;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package jdbox.content.pinned;
+
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import jdbox.content.bytestores.ByteStore;
+import jdbox.content.bytestores.ReadOnlyFileByteStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+
+/**
+ * Content of pinned files kept on disk in config.directory, one file per md5. Content is written under a temporary
+ * name and renamed once it is complete and verified, so a file named after an md5 always holds the full content.
+ * Nothing is kept if config.directory is null.
+ */
+public class PinnedContent {
+
+    private static final Logger logger = LoggerFactory.getLogger(PinnedContent.class);
+
+    private static final String partSuffix = ".part";
+
+    public static Config defaultConfig = new Config();
+
+    private volatile Config config;
+
+    @Inject
+    public PinnedContent(Config config) {
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public boolean isEnabled() {
+        return config.directory != null;
+    }
+
+    public boolean contains(String md5) {
+        File directory = config.directory;
+        return directory != null && md5 != null && new File(directory, md5).isFile();
+    }
+
+    /**
+     * @return Read only content or null if there is no content with the given md5.
+     */
+    public ByteStore open(String md5) throws IOException {
+
+        if (!contains(md5))
+            return null;
+
+        try {
+            return new ReadOnlyFileByteStore(new File(config.directory, md5));
+        } catch (FileNotFoundException e) {
+            // has just been removed as no pinned file has this md5 anymore
+            return null;
+        }
+    }
+
+    public void put(String md5, InputStream content) throws IOException {
+
+        File directory = config.directory;
+        if (directory == null)
+            throw new IllegalStateException("pinned content is disabled");
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create " + directory);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        File part = File.createTempFile(md5 + "-", partSuffix, directory);
+
+        try {
+
+            try (OutputStream out = new DigestOutputStream(new FileOutputStream(part), digest)) {
+                ByteStreams.copy(content, out);
+            }
+
+            byte[] value = digest.digest();
+            String actual = String.format("%0" + (value.length << 1) + "x", new BigInteger(1, value));
+            if (!md5.equals(actual))
+                throw new IOException("content has md5 " + actual + " instead of " + md5);
+
+            if (!part.renameTo(new File(directory, md5)))
+                throw new IOException("could not rename " + part);
+
+        } finally {
+            if (part.exists() && !part.delete())
+                logger.warn("could not delete {}", part);
+        }
+    }
+
+    /**
+     * Removes content with md5 sums other than the given ones, as well as partially written content.
+     */
+    public void retainOnly(Set<String> md5s) {
+
+        File[] files = listFiles();
+
+        for (File file : files) {
+            if (!md5s.contains(file.getName()) && !file.delete())
+                logger.warn("could not delete {}", file);
+        }
+    }
+
+    public int getCount() {
+        int count = 0;
+        for (File file : listFiles()) {
+            if (!file.getName().endsWith(partSuffix))
+                count++;
+        }
+        return count;
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (File file : listFiles())
+            size += file.length();
+        return size;
+    }
+
+    private File[] listFiles() {
+        File directory = config.directory;
+        File[] files = directory != null ? directory.listFiles() : null;
+        return files != null ? files : new File[0];
+    }
+
+    public static class Config {
+
+        public final File directory;
+
+        public Config() {
+            directory = null;
+        }
+
+        public Config(File directory) {
+            this.directory = directory;
+        }
+    }
+}
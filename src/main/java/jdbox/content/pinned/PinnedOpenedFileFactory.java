@@ -0,0 +1,33 @@
+package jdbox.content.pinned;
+
+import jdbox.content.bytestores.ByteStore;
+import jdbox.content.filetypes.OpenedFileFactory;
+import jdbox.models.File;
+import jdbox.models.FileAttributes;
+
+import java.io.IOException;
+
+/**
+ * Serves content of pinned files from disk, falls back to the given factory for files that are not pinned.
+ */
+public class PinnedOpenedFileFactory implements OpenedFileFactory {
+
+    private final PinnedContent pinnedContent;
+    private final OpenedFileFactory factory;
+
+    public PinnedOpenedFileFactory(PinnedContent pinnedContent, OpenedFileFactory factory) {
+        this.pinnedContent = pinnedContent;
+        this.factory = factory;
+    }
+
+    @Override
+    public long getSize(FileAttributes attributes) {
+        return factory.getSize(attributes);
+    }
+
+    @Override
+    public ByteStore create(File file) throws IOException {
+        ByteStore content = pinnedContent.open(file.getMd5Sum());
+        return content != null ? content : factory.create(file);
+    }
+}
@@ -0,0 +1,271 @@
+package jdbox.content.pinned;
+
+import com.google.inject.Inject;
+import jdbox.OperationContext;
+import jdbox.driveadapter.DriveAdapter;
+import jdbox.driveadapter.Field;
+import jdbox.filetree.FileTree;
+import jdbox.filetree.RemoteFileChangeEvent;
+import jdbox.models.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps content of pinned files and of all files under pinned directories on disk, so that they are opened without
+ * going to the cloud. Paths are pinned through config.paths or at runtime, the latter are saved to config.stateFile.
+ * Pinned content is synchronized on start, every config.syncPeriod seconds and whenever a remote change is applied.
+ */
+public class Pinner {
+
+    private static final Logger logger = LoggerFactory.getLogger(Pinner.class);
+
+    public static Config defaultConfig = new Config();
+
+    private final FileTree fileTree;
+    private final DriveAdapter drive;
+    private final PinnedContent pinnedContent;
+    private final Observable<RemoteFileChangeEvent> remoteFileChangeEvent;
+    private final Set<String> paths = new TreeSet<>();
+    private final AtomicBoolean syncRequested = new AtomicBoolean(false);
+
+    private volatile Config config;
+    private volatile ScheduledExecutorService executor;
+    private volatile Subscription remoteFileChangeEventSubscription;
+
+    @Inject
+    public Pinner(
+            FileTree fileTree, DriveAdapter drive, PinnedContent pinnedContent,
+            Observable<RemoteFileChangeEvent> remoteFileChangeEvent, Config config) {
+        this.fileTree = fileTree;
+        this.drive = drive;
+        this.pinnedContent = pinnedContent;
+        this.remoteFileChangeEvent = remoteFileChangeEvent;
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public synchronized void init() throws IOException {
+
+        for (String path : config.paths)
+            paths.add(normalize(path));
+
+        if (config.stateFile != null && config.stateFile.exists()) {
+            for (String path : Files.readAllLines(config.stateFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!path.isEmpty())
+                    paths.add(normalize(path));
+            }
+        }
+    }
+
+    public void start() {
+
+        if (!pinnedContent.isEnabled())
+            return;
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                requestSync();
+            }
+        }, 0, config.syncPeriod, TimeUnit.SECONDS);
+
+        remoteFileChangeEventSubscription = remoteFileChangeEvent.subscribe(new Action1<RemoteFileChangeEvent>() {
+            @Override
+            public void call(RemoteFileChangeEvent event) {
+                requestSync();
+            }
+        });
+    }
+
+    public void tearDown() throws InterruptedException {
+
+        if (remoteFileChangeEventSubscription != null)
+            remoteFileChangeEventSubscription.unsubscribe();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            executor = null;
+        }
+    }
+
+    public synchronized Set<String> getPaths() {
+        return Collections.unmodifiableSet(new TreeSet<>(paths));
+    }
+
+    /**
+     * @return Whether the path or any of its parents is pinned.
+     */
+    public synchronized boolean isPinned(String path) {
+
+        for (Path current = Paths.get(normalize(path)); current != null; current = current.getParent()) {
+            if (paths.contains(current.toString()))
+                return true;
+        }
+
+        return false;
+    }
+
+    public void pin(String path) throws IOException {
+
+        fileTree.get(path);
+
+        synchronized (this) {
+            if (!paths.add(normalize(path)))
+                return;
+            save();
+        }
+
+        requestSync();
+    }
+
+    /**
+     * @return False if the path itself is not pinned, even though it might be pinned through one of its parents.
+     */
+    public boolean unpin(String path) throws IOException {
+
+        synchronized (this) {
+            if (!paths.remove(normalize(path)))
+                return false;
+            save();
+        }
+
+        requestSync();
+
+        return true;
+    }
+
+    /**
+     * Downloads content of pinned files that is missing on disk and removes content that is not pinned anymore.
+     * Nothing is removed if the tree of pinned files can not be walked completely.
+     */
+    public void sync() {
+
+        OperationContext.initialize("", "sync pinned");
+
+        try {
+
+            Map<String, File> files = new HashMap<>();
+
+            for (String path : getPaths()) {
+                try {
+                    collect(Paths.get(path), files);
+                } catch (FileTree.NoSuchFileException e) {
+                    logger.warn("pinned {} does not exist", path);
+                }
+            }
+
+            for (Map.Entry<String, File> entry : files.entrySet()) {
+
+                if (pinnedContent.contains(entry.getKey()))
+                    continue;
+
+                try {
+                    download(entry.getValue());
+                } catch (IOException e) {
+                    logger.error("could not download {}", entry.getValue(), e);
+                }
+            }
+
+            pinnedContent.retainOnly(files.keySet());
+
+            logger.debug("pinned content is synchronized, {} files", files.size());
+
+        } catch (IOException e) {
+            logger.error("could not walk pinned files", e);
+        } finally {
+            OperationContext.clear();
+        }
+    }
+
+    private void requestSync() {
+
+        ScheduledExecutorService executor = this.executor;
+
+        if (executor == null || !syncRequested.compareAndSet(false, true))
+            return;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                syncRequested.set(false);
+                sync();
+            }
+        });
+    }
+
+    private void collect(Path path, Map<String, File> files) throws IOException {
+
+        File file = fileTree.get(path);
+
+        if (file.isDirectory()) {
+            for (String name : fileTree.getChildren(path))
+                collect(path.resolve(name), files);
+        } else if (file.getId().isSet() && file.getMd5Sum() != null && file.getDownloadUrl() != null) {
+            files.put(file.getMd5Sum(), file);
+        }
+    }
+
+    private void download(File file) throws IOException {
+
+        logger.debug("downloading pinned {}", file);
+
+        try (InputStream content = drive.downloadFileRange(file.toDaFile(EnumSet.of(Field.DOWNLOAD_URL)), 0, 0)) {
+            pinnedContent.put(file.getMd5Sum(), content);
+        }
+    }
+
+    private void save() throws IOException {
+        if (config.stateFile != null)
+            Files.write(config.stateFile.toPath(), paths, StandardCharsets.UTF_8);
+    }
+
+    private static String normalize(String path) {
+        return Paths.get("/").resolve(path).normalize().toString();
+    }
+
+    public static class Config {
+
+        public final List<String> paths;
+        public final java.io.File stateFile;
+        public final int syncPeriod;
+
+        public Config() {
+            paths = Collections.emptyList();
+            stateFile = null;
+            syncPeriod = 600;
+        }
+
+        public Config(List<String> paths, java.io.File stateFile, int syncPeriod) {
+            this.paths = paths;
+            this.stateFile = stateFile;
+            this.syncPeriod = syncPeriod;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package jdbox.content.pinned;
+
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import jdbox.modules.ActiveModule;
+
+import java.io.IOException;
+
+public class PinningModule extends ActiveModule {
+
+    @Override
+    protected void configure() {
+        bind(Pinner.Config.class).toInstance(Pinner.defaultConfig);
+        bind(Pinner.class).in(Singleton.class);
+    }
+
+    @Override
+    public void init(Injector injector) throws IOException {
+        injector.getInstance(Pinner.class).init();
+    }
+
+    @Override
+    public void start(Injector injector) {
+        injector.getInstance(Pinner.class).start();
+    }
+
+    @Override
+    public void tearDown(Injector injector) throws InterruptedException {
+        injector.getInstance(Pinner.class).tearDown();
+    }
+}
@@ -7,6 +7,7 @@ import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.About;
 import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.FileList;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.SettableFuture;
@@ -16,6 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -25,16 +27,25 @@ public class DriveAdapter {
 
     private static final Logger logger = LoggerFactory.getLogger(DriveAdapter.class);
 
+    public static Config defaultConfig = new Config();
+
     private final Drive drive;
     private final boolean safe;
 
-    public DriveAdapter(Drive drive) {
-        this(drive, true);
+    private volatile Config config;
+
+    public DriveAdapter(Drive drive, Config config) {
+        this(drive, true, config);
     }
 
-    public DriveAdapter(Drive drive, @Named("DriveAdapter.safe") Boolean safe) {
+    public DriveAdapter(Drive drive, @Named("DriveAdapter.safe") Boolean safe, Config config) {
         this.drive = drive;
         this.safe = safe;
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
     }
 
     public BasicInfo getBasicInfo() throws IOException {
@@ -44,11 +55,39 @@ public class DriveAdapter {
         return new BasicInfo(drive.about().get().execute());
     }
 
-    public Changes getChanges(long startChangeId) throws IOException {
+    /**
+     * Retrieves changes page by page, each page is passed to the handler as soon as it arrives, so that the handler
+     * may apply it before the next page is requested.
+     *
+     * @return The largest change id reported by the last page.
+     */
+    public long getChanges(long startChangeId, PageHandler<Change> handler) throws IOException {
 
         logger.debug("getting changes starting with {}", startChangeId);
 
-        return new Changes(drive.changes().list().setStartChangeId(startChangeId).execute());
+        Drive.Changes.List request = drive.changes().list()
+                .setStartChangeId(startChangeId).setMaxResults(config.pageSize);
+
+        long largestChangeId;
+
+        do {
+
+            ChangeList changes = request.execute();
+            largestChangeId = changes.getLargestChangeId();
+
+            handler.apply(changes.getItems() != null ?
+                    Lists.transform(changes.getItems(), new Function<com.google.api.services.drive.model.Change, Change>() {
+                        @Override
+                        public Change apply(com.google.api.services.drive.model.Change change) {
+                            return new Change(change);
+                        }
+                    }) : new ArrayList<Change>());
+
+            request.setPageToken(changes.getNextPageToken());
+
+        } while (request.getPageToken() != null && !request.getPageToken().isEmpty());
+
+        return largestChangeId;
     }
 
     public File getFile(File file) throws IOException {
@@ -65,18 +104,49 @@ public class DriveAdapter {
 
     public List<File> getChildren(File file) throws IOException {
 
+        final List<File> result = new ArrayList<>();
+
+        getChildren(file, new PageHandler<File>() {
+            @Override
+            public void apply(List<File> page) {
+                result.addAll(page);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Retrieves children of the file page by page, each page is passed to the handler as soon as it arrives.
+     */
+    public void getChildren(File file, PageHandler<File> handler) throws IOException {
+
         logger.debug("getting children of {}", file);
 
-        return Lists.transform(
-                drive.files().list()
-                        .setQ("'" + file.getId() + "' in parents and trashed = false")
-                        .setFields("items(" + File.fields + ")").setMaxResults(1000).execute().getItems(),
-                new Function<com.google.api.services.drive.model.File, File>() {
-                    @Override
-                    public File apply(com.google.api.services.drive.model.File file) {
-                        return new File(file);
-                    }
-                });
+        Drive.Files.List request = drive.files().list()
+                .setQ("'" + file.getId() + "' in parents and trashed = false")
+                .setFields("nextPageToken,items(" + File.fields + ")").setMaxResults(config.pageSize);
+
+        int pages = 0;
+
+        do {
+
+            FileList files = request.execute();
+            pages++;
+
+            handler.apply(files.getItems() != null ?
+                    Lists.transform(files.getItems(), new Function<com.google.api.services.drive.model.File, File>() {
+                        @Override
+                        public File apply(com.google.api.services.drive.model.File file) {
+                            return new File(file);
+                        }
+                    }) : new ArrayList<File>());
+
+            request.setPageToken(files.getNextPageToken());
+
+        } while (request.getPageToken() != null && !request.getPageToken().isEmpty());
+
+        logger.debug("got children of {} in {} pages", file, pages);
     }
 
     public File createFolder(String name, File parent) throws IOException {
@@ -112,6 +182,21 @@ public class DriveAdapter {
         return new File(request.execute());
     }
 
+    /**
+     * Makes a server side copy of the source's content, no content is transferred.
+     *
+     * @param file Properties of the copy, such as name and parent ids.
+     */
+    public File copyFile(File source, File file) throws IOException {
+
+        if (source.getId() == null)
+            throw new AssertionError("source.id must not be null");
+
+        logger.debug("copying {} to {}", source, file);
+
+        return new File(drive.files().copy(source.getId(), file.toGdFile()).execute());
+    }
+
     public void deleteFile(File file) throws IOException {
 
         if (safe && file.getEtag() == null)
@@ -219,40 +304,46 @@ public class DriveAdapter {
         return new File(request.execute());
     }
 
-    public class BasicInfo {
+    public interface PageHandler<T> {
+        void apply(List<T> page) throws IOException;
+    }
 
-        public final long largestChangeId;
-        public final String rootFolderId;
+    public static class Config {
 
-        public BasicInfo(About about) {
-            largestChangeId = about.getLargestChangeId();
-            rootFolderId = about.getRootFolderId();
+        /**
+         * Maximum number of items requested at once from methods that support paging.
+         */
+        public final int pageSize;
+
+        public Config() {
+            pageSize = 1000;
+        }
+
+        public Config(int pageSize) {
+            this.pageSize = pageSize;
         }
     }
 
-    public class Changes {
+    public class BasicInfo {
 
         public final long largestChangeId;
-        public final List<Change> items;
+        public final String rootFolderId;
 
-        public Changes(ChangeList changes) {
-            largestChangeId = changes.getLargestChangeId();
-            items = Lists.transform(changes.getItems(), new Function<com.google.api.services.drive.model.Change, Change>() {
-                @Override
-                public Change apply(com.google.api.services.drive.model.Change change) {
-                    return new Change(change);
-                }
-            });
+        public BasicInfo(About about) {
+            largestChangeId = about.getLargestChangeId();
+            rootFolderId = about.getRootFolderId();
         }
     }
 
     public class Change {
 
+        public final long id;
         public final String fileId;
         public final File file;
         public final boolean isDeleted;
 
         private Change(com.google.api.services.drive.model.Change change) {
+            id = change.getId();
             fileId = change.getFileId();
             file = change.getFile() != null ? new File(change.getFile()) : null;
             isDeleted = change.getDeleted();
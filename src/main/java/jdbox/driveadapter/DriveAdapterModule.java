@@ -17,8 +17,12 @@ public class DriveAdapterModule extends AbstractModule {
 
         bind(Drive.class).toInstance(drive);
 
+        bind(DriveAdapter.Config.class).toInstance(DriveAdapter.defaultConfig);
+
         try {
-            bind(DriveAdapter.class).toConstructor(DriveAdapter.class.getConstructor(Drive.class)).in(Singleton.class);
+            bind(DriveAdapter.class)
+                    .toConstructor(DriveAdapter.class.getConstructor(Drive.class, DriveAdapter.Config.class))
+                    .in(Singleton.class);
         } catch (NoSuchMethodException e) {
             throw new RuntimeException(e);
         }
@@ -1,17 +1,22 @@
 package jdbox.filetree;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
 import jdbox.content.OpenedFilesManager;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.Field;
 import jdbox.localstate.LocalState;
 import jdbox.localstate.interfaces.*;
+import jdbox.localstate.knownfiles.FileNode;
 import jdbox.localstate.knownfiles.KnownFile;
 import jdbox.localstate.knownfiles.KnownFiles;
+import jdbox.localstate.knownfiles.KnownFilesSnapshot;
+import jdbox.localstate.knownfiles.KnownFilesVersion;
+import jdbox.localstate.knownfiles.PathCache;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 import jdbox.models.fileids.FileId;
 import jdbox.models.fileids.FileIdStore;
 import jdbox.uploader.DriveTask;
@@ -21,15 +26,17 @@ import jdbox.uploader.Uploader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
+import rx.Observer;
 import rx.Subscription;
 import rx.functions.Action1;
 
-import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -40,44 +47,48 @@ public class FileTree {
 
     private static final Logger logger = LoggerFactory.getLogger(FileTree.class);
 
+    private static final int maxOptimisticFetches = 3;
+
+    public static Config defaultConfig = new Config();
+
     private final DriveAdapter drive;
     private final FileIdStore fileIdStore;
     private final Observable<FileEtagUpdateEvent> fileEtagUpdateEvent;
     private final rx.Observable<UploadFailureEvent> uploadFailureEvent;
+    private final Observer<RemoteFileChangeEvent> remoteFileChangeEvent;
     private final OpenedFilesManager openedFilesManager;
 
     private final LocalState localState;
 
+    private volatile Config config;
+
+    // held while changes are retrieved and applied
+    private final Object changeFeedLock = new Object();
+
+    // directories whose children are being retrieved, guarded by itself
+    private final Map<FileId, SettableFuture<Void>> fetches = new HashMap<>();
     private volatile ScheduledExecutorService scheduler;
     private volatile Subscription fileEtagUpdateEventSubscription;
     private volatile Subscription uploadFailureEventSubscription;
 
     private final static Getter<List<String>> namesGetter = new Getter<List<String>>() {
         @Override
-        public List<String> apply(String fileName, final Map<String, KnownFile> files) {
-            return ImmutableList.copyOf(
-                    Collections2.transform(files.entrySet(), new Function<Map.Entry<String, KnownFile>, String>() {
-                        @Nullable
-                        @Override
-                        public String apply(Map.Entry<String, KnownFile> entry) {
-                            return entry.getKey();
-                        }
-                    }));
+        public List<String> apply(String fileName, FileNode dir, KnownFilesVersion version) {
+            return ImmutableList.copyOf(dir.getChildNamesOrNull());
         }
     };
 
-    private final static Getter<File> singleFileGetter = new Getter<File>() {
+    private final static Getter<FileNode> singleNodeGetter = new Getter<FileNode>() {
         @Override
-        public File apply(String fileName, Map<String, KnownFile> files) {
-            KnownFile kf = singleKnownFileGetter.apply(fileName, files);
-            return kf != null ? kf.toFile() : null;
+        public FileNode apply(String fileName, FileNode dir, KnownFilesVersion version) {
+            return version.getChild(dir, fileName);
         }
     };
 
-    private final static Getter<KnownFile> singleKnownFileGetter = new Getter<KnownFile>() {
+    private final static Getter<Boolean> trackedGetter = new Getter<Boolean>() {
         @Override
-        public KnownFile apply(String fileName, Map<String, KnownFile> files) {
-            return files.get(fileName);
+        public Boolean apply(String fileName, FileNode dir, KnownFilesVersion version) {
+            return true;
         }
     };
 
@@ -85,13 +96,20 @@ public class FileTree {
     public FileTree(
             DriveAdapter drive, FileIdStore fileIdStore,
             Observable<FileEtagUpdateEvent> fileEtagUpdateEvent, Observable<UploadFailureEvent> uploadFailureEvent,
-            OpenedFilesManager openedFilesManager, LocalState localState) {
+            Observer<RemoteFileChangeEvent> remoteFileChangeEvent,
+            OpenedFilesManager openedFilesManager, LocalState localState, Config config) {
         this.drive = drive;
         this.fileIdStore = fileIdStore;
         this.fileEtagUpdateEvent = fileEtagUpdateEvent;
         this.uploadFailureEvent = uploadFailureEvent;
+        this.remoteFileChangeEvent = remoteFileChangeEvent;
         this.openedFilesManager = openedFilesManager;
         this.localState = localState;
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
     }
 
     public int getKnownFileCount() {
@@ -130,8 +148,10 @@ public class FileTree {
 
         DriveAdapter.BasicInfo info = drive.getBasicInfo();
 
-        localState.setRoot(info.rootFolderId);
-        localState.setLargestChangeId(info.largestChangeId);
+        if (!tryLoadSnapshot(info.rootFolderId)) {
+            localState.setRoot(info.rootFolderId);
+            localState.setLargestChangeId(info.largestChangeId);
+        }
     }
 
     public void start() {
@@ -144,6 +164,15 @@ public class FileTree {
                 FileTree.this.retrieveAndApplyChanges();
             }
         }, 0, 5, TimeUnit.SECONDS);
+
+        if (config.snapshotFile != null) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    FileTree.this.trySaveSnapshot();
+                }
+            }, config.snapshotPeriod, config.snapshotPeriod, TimeUnit.SECONDS);
+        }
     }
 
     public void tearDown() throws InterruptedException {
@@ -152,6 +181,7 @@ public class FileTree {
             scheduler.shutdown();
             scheduler.awaitTermination(5, TimeUnit.SECONDS);
             scheduler = null;
+            trySaveSnapshot();
         }
 
         if (fileEtagUpdateEventSubscription != null)
@@ -171,7 +201,7 @@ public class FileTree {
     }
 
     public File get(String path) throws IOException {
-        return get(Paths.get(path));
+        return getNode(path).toFile();
     }
 
     public File get(Path path) throws IOException {
@@ -185,17 +215,64 @@ public class FileTree {
     }
 
     public File getOrNull(Path path) throws IOException {
+        FileNode node = getNodeOrNull(path);
+        return node != null ? node.toFile() : null;
+    }
 
-        if (isRoot(path)) {
-            return localState.read(new LocalReadSafe<File>() {
-                @Override
-                public File run(KnownFiles knownFiles) {
-                    return knownFiles.getRoot().toFile();
-                }
-            });
+    /**
+     * Same as get, but does not allocate anything if the path is cached.
+     */
+    public FileAttributes getAttributes(String path) throws IOException {
+        return getNode(path).getAttributes();
+    }
+
+    private FileNode getNode(String path) throws IOException {
+
+        PathCache pathCache = localState.getPathCache();
+
+        FileNode node = pathCache.get(path);
+        if (node != null)
+            return node;
+
+        if (pathCache.isAbsent(path))
+            throw new NoSuchFileException(Paths.get(path));
+
+        node = getNodeOrNull(Paths.get(path));
+
+        if (node == null)
+            throw new NoSuchFileException(Paths.get(path));
+
+        return node;
+    }
+
+    private FileNode getNodeOrNull(Path path) throws IOException {
+
+        PathCache pathCache = localState.getPathCache();
+        String key = path.toString();
+
+        FileNode node = pathCache.get(key);
+        if (node != null)
+            return node;
+
+        if (pathCache.isAbsent(key))
+            return null;
+
+        long stamp = pathCache.getStamp();
+
+        if (isRoot(path))
+            node = localState.getVersion().getRoot();
+        else
+            node = getOrFetch(path.getParent(), path.getFileName().toString(), singleNodeGetter);
+
+        if (node == null) {
+            // the parent is tracked, so the answer is authoritative
+            pathCache.putAbsent(key, stamp);
+            return null;
         }
 
-        return getOrFetch(path.getParent(), path.getFileName().toString(), singleFileGetter);
+        pathCache.put(key, node, stamp);
+
+        return node;
     }
 
     public List<String> getChildren(String path) throws IOException {
@@ -215,11 +292,13 @@ public class FileTree {
 
         logger.debug("creating {}", isDirectory ? "folder" : "file");
 
+        prefetch(path.getParent());
+
         return localState.update(
                 new FilePropertiesLocalUpdate(path) {
                     @Override
                     public KnownFile run(
-                            KnownFile existing, KnownFile parent, KnownFiles knownFiles, Uploader uploader)
+                            KnownFile existing, KnownFile parent, KnownFiles knownFiles, final Uploader uploader)
                             throws IOException {
 
                         if (!parent.isDirectory())
@@ -233,6 +312,7 @@ public class FileTree {
                                 fileIdStore.create(), path.getFileName().toString(), isDirectory, now);
                         newFile.setDates(now, now);
                         newFile.setContentProperties(0, "d41d8cd98f00b204e9800998ecf8427e"); // empty file md5
+                        newFile.setCreatedEmpty(!isDirectory);
 
                         parent.tryAddChild(newFile);
 
@@ -243,16 +323,24 @@ public class FileTree {
                             @Override
                             public jdbox.driveadapter.File run(jdbox.driveadapter.File file) throws IOException {
 
-                                final jdbox.driveadapter.File createdFile = drive.createFile(
-                                        file, new ByteArrayInputStream(new byte[0]));
+                                final jdbox.driveadapter.File createdFile;
+
+                                Uploader.IdAssignment idAssignment = uploader.beginIdAssignment();
+
+                                try {
+                                    createdFile = drive.createFile(file, new ByteArrayInputStream(new byte[0]));
+                                    newFile.getId().set(createdFile.getId());
+                                } finally {
+                                    idAssignment.close();
+                                }
 
                                 localState.update(new LocalUpdateSafe() {
                                     @Override
                                     public void run(
                                             KnownFiles knownFiles, Uploader uploader) {
-                                        newFile.setUploaded(
-                                                createdFile.getId(), createdFile.getMimeType(),
-                                                createdFile.getDownloadUrl(), createdFile.getAlternateLink());
+                                        newFile.setRemoteProperties(
+                                                createdFile.getMimeType(), createdFile.getDownloadUrl(),
+                                                createdFile.getAlternateLink());
                                     }
                                 });
 
@@ -274,6 +362,8 @@ public class FileTree {
 
         logger.debug("setting dates");
 
+        prefetch(path.getParent());
+
         localState.update(new FilePropertiesLocalUpdate(path) {
             @Override
             public KnownFile run(
@@ -310,6 +400,9 @@ public class FileTree {
 
         logger.debug("removing");
 
+        prefetch(path.getParent());
+        prefetch(path);
+
         localState.update(new FilePropertiesLocalUpdate(path) {
             @Override
             public KnownFile run(
@@ -380,6 +473,9 @@ public class FileTree {
         if (path.equals(newPath))
             return;
 
+        prefetch(path.getParent());
+        prefetch(newPath.getParent());
+
         localState.update(new FilePropertiesLocalUpdate(path) {
             @Override
             public KnownFile run(
@@ -439,57 +535,270 @@ public class FileTree {
         });
     }
 
-    private <T> T getOrFetch(final Path path, final String fileName, final Getter<T> getter) throws IOException {
+    /**
+     * Walks the latest published version of known files without any locking, untracked directories on the way are
+     * fetched and the walk is repeated on the version that includes them. Children that are already known in
+     * partially tracked directories are found without waiting for the rest of the list.
+     */
+    private <T> T getOrFetch(Path path, String fileName, Getter<T> getter) throws IOException {
 
-        T result = localState.read(new LocalRead<T>() {
-            @Override
-            public T run(KnownFiles knownFiles) throws NotDirectoryException {
+        while (true) {
+
+            KnownFilesVersion version = localState.getVersion();
+            FileNode dir = version.getRoot();
+            FileId untrackedDirId = null;
+            Path current = path.getRoot();
 
-                KnownFile dir = locateFile(knownFiles.getRoot(), path);
+            for (Path name : path) {
+
+                current = current != null ? current.resolve(name) : name;
+                FileNode child = version.getChild(dir, name.toString());
+
+                if (child == null) {
+
+                    if (!dir.isTracked()) {
+                        untrackedDirId = dir.getId();
+                        break;
+                    }
+
+                    throw new NoSuchFileException(current);
+                }
 
-                if (dir == null)
-                    return null;
+                dir = child;
 
                 if (!dir.isDirectory())
-                    throw new NotDirectoryException(path);
+                    throw new NotDirectoryException(current);
+            }
+
+            if (untrackedDirId == null && !dir.isTracked() &&
+                    (fileName == null || version.getChild(dir, fileName) == null))
+                untrackedDirId = dir.getId();
+
+            if (untrackedDirId == null)
+                return getter.apply(fileName, dir, version);
+
+            fetch(untrackedDirId);
+        }
+    }
+
+    /**
+     * Makes sure that the directory and its ancestors are tracked, so that a following write operation on the path
+     * does not have to retrieve anything while holding the write lock. Errors are left for the write operation to
+     * report.
+     */
+    private void prefetch(Path path) {
+
+        if (path == null)
+            return;
+
+        try {
+            getOrFetch(path, null, trackedGetter);
+        } catch (IOException ignored) {
+        }
+    }
 
-                Map<String, KnownFile> children = dir.getChildrenOrNull();
-                return children != null ? getter.apply(fileName, children) : null;
+    /**
+     * Retrieves children of the directory without holding the write lock, the result is merged into known files in
+     * a short write section afterwards. Concurrent fetches of the same directory share one retrieval.
+     */
+    private void fetch(FileId dirId) throws IOException {
+
+        SettableFuture<Void> fetch;
+        boolean isOwner;
+
+        synchronized (fetches) {
+            fetch = fetches.get(dirId);
+            isOwner = fetch == null;
+            if (isOwner) {
+                fetch = SettableFuture.create();
+                fetches.put(dirId, fetch);
             }
-        });
+        }
 
-        if (result != null)
-            return result;
+        if (!isOwner) {
+            try {
+                fetch.get();
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a list of files");
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new RuntimeException(e.getCause());
+            }
+        }
 
-        return localState.update(new RemoteRead<T>() {
-            @Override
-            public T run() throws IOException {
-                return localState.update(new LocalUpdate<T>() {
+        try {
+            fetchAndMerge(dirId);
+            fetch.set(null);
+        } catch (Throwable e) {
+            fetch.setException(e);
+            throw e;
+        } finally {
+            synchronized (fetches) {
+                fetches.remove(dirId);
+            }
+        }
+    }
+
+    private void fetchAndMerge(final FileId dirId) throws IOException {
+
+        for (int attempt = 0; attempt < maxOptimisticFetches; attempt++) {
+
+            final File dir = localState.read(new LocalReadSafe<File>() {
+                @Override
+                public File run(KnownFiles knownFiles) {
+                    KnownFile dir = knownFiles.get(dirId);
+                    return dir != null && !dir.isTracked() ? dir.toFile() : null;
+                }
+            });
+
+            if (dir == null)
+                return;
+
+            if (!dirId.isSet()) {
+                localState.update(new LocalUpdateSafe() {
                     @Override
-                    public T run(KnownFiles knownFiles, Uploader uploader) throws IOException {
-                        return getOrFetchUnsafe(knownFiles, knownFiles.getRoot(), path, fileName, getter);
+                    public void run(KnownFiles knownFiles, Uploader uploader) {
+                        KnownFile dir = knownFiles.get(dirId);
+                        if (dir != null)
+                            dir.setTracked();
                     }
                 });
+                return;
             }
-        });
+
+            boolean merged = localState.update(new RemoteRead<Boolean>() {
+                @Override
+                public Boolean run(Uploader.Fence fence) throws IOException {
+                    return retrieveAndMergeChildren(dir, fence, true);
+                }
+            });
+
+            if (merged)
+                return;
+
+            logger.debug("list of files has been outdated by remote changes, retrieving it again");
+        }
+
+        // remote changes keep arriving, retrieve the list while they are not applied
+        synchronized (changeFeedLock) {
+            localState.update(new RemoteReadVoid() {
+                @Override
+                public void run(Uploader.Fence fence) throws IOException {
+
+                    File dir = localState.read(new LocalReadSafe<File>() {
+                        @Override
+                        public File run(KnownFiles knownFiles) {
+                            KnownFile dir = knownFiles.get(dirId);
+                            return dir != null && !dir.isTracked() ? dir.toFile() : null;
+                        }
+                    });
+
+                    if (dir != null)
+                        retrieveAndMergeChildren(dir, fence, false);
+                }
+            });
+        }
     }
 
-    private KnownFile locateFile(KnownFile file, Path path) {
+    /**
+     * Every page of children is merged into known files in a short write section as soon as it is retrieved, the
+     * directory is partially tracked until the last page is merged. If changes are applied concurrently, a page is
+     * merged only if no change has been applied since it has been requested, otherwise it might be older than them.
+     * Pages that have been merged already are kept, changes are applied to them.
+     *
+     * @return False if a page has been outdated by applied changes and the list has to be retrieved again.
+     */
+    private boolean retrieveAndMergeChildren(File dir, final Uploader.Fence fence, final boolean changesAreApplied)
+            throws IOException {
 
-        if (isRoot(path))
-            return file;
+        final FileId dirId = dir.getId();
+        final long[] largestChangeId = new long[]{localState.getLargestChangeId()};
 
-        Map<String, KnownFile> children = file.getChildrenOrNull();
+        try {
 
-        if (children == null)
-            return null;
+            drive.getChildren(dir.toDaFile(), new DriveAdapter.PageHandler<jdbox.driveadapter.File>() {
+                @Override
+                public void apply(List<jdbox.driveadapter.File> page) throws IOException {
+
+                    fence.awaitIdAssignments();
+
+                    final List<File> children = new ArrayList<>(page.size());
+                    for (jdbox.driveadapter.File child : page)
+                        children.add(new File(fileIdStore, child));
+
+                    largestChangeId[0] = localState.update(new LocalUpdate<Long>() {
+                        @Override
+                        public Long run(KnownFiles knownFiles, Uploader uploader) throws IOException {
+
+                            KnownFile dir = knownFiles.get(dirId);
+
+                            // removed or completely retrieved by someone else in the meantime
+                            if (dir == null || dir.isTracked())
+                                throw new InterruptedListingException(false);
+
+                            if (changesAreApplied && knownFiles.getLargestChangeId() != largestChangeId[0])
+                                throw new InterruptedListingException(true);
+
+                            dir.setPartiallyTracked();
+                            merge(knownFiles, dir, children, fence);
+
+                            return knownFiles.getLargestChangeId();
+                        }
+                    });
+                }
+            });
+
+        } catch (InterruptedListingException e) {
+            return !e.isOutdated;
+        }
+
+        localState.update(new LocalUpdateSafe() {
+            @Override
+            public void run(KnownFiles knownFiles, Uploader uploader) {
+                KnownFile dir = knownFiles.get(dirId);
+                if (dir != null)
+                    dir.setTracked();
+            }
+        });
+
+        return true;
+    }
+
+    private List<File> retrieveChildren(File dir, final Uploader.Fence fence) throws IOException {
+
+        final List<File> retrieved = new ArrayList<>();
 
-        KnownFile child = children.get(path.getName(0).toString());
+        drive.getChildren(dir.toDaFile(), new DriveAdapter.PageHandler<jdbox.driveadapter.File>() {
+            @Override
+            public void apply(List<jdbox.driveadapter.File> page) throws IOException {
+                fence.awaitIdAssignments();
+                for (jdbox.driveadapter.File child : page)
+                    retrieved.add(new File(fileIdStore, child));
+            }
+        });
 
-        if (child == null || path.getNameCount() == 1)
-            return child;
+        return retrieved;
+    }
 
-        return locateFile(child, path.subpath(1, path.getNameCount()));
+    private void track(KnownFiles knownFiles, KnownFile dir, List<File> children, Uploader.Fence fence) {
+        merge(knownFiles, dir, children, fence);
+        dir.setTracked();
+    }
+
+    /**
+     * Files touched by the Uploader while the list has been retrieved are taken from the local state, if they are
+     * not known anymore, they have been moved or removed locally.
+     */
+    private void merge(KnownFiles knownFiles, KnownFile dir, List<File> children, Uploader.Fence fence) {
+        for (File file : children) {
+            KnownFile existing = knownFiles.get(file.getId());
+            if (existing != null)
+                dir.tryAddChild(existing);
+            else if (!fence.isTouched(file.getId()))
+                dir.tryAddChild(knownFiles.create(file));
+        }
     }
 
     private KnownFile getUnsafe(KnownFiles knownFiles, KnownFile root, Path path) throws IOException {
@@ -507,25 +816,21 @@ public class FileTree {
         if (isRoot(path))
             return root;
 
-        return getOrFetchUnsafe(
-                knownFiles, root, path.getParent(), path.getFileName().toString(), singleKnownFileGetter);
+        return getChildrenUnsafe(knownFiles, root, path.getParent()).get(path.getFileName().toString());
     }
 
-    private List<String> getChildrenUnsafe(KnownFiles knownFiles, KnownFile root, Path path) throws IOException {
-        return getOrFetchUnsafe(knownFiles, root, path, null, namesGetter);
-    }
-
-    private <T> T getOrFetchUnsafe(
-            KnownFiles knownFiles, KnownFile root, Path path, String fileName, Getter<T> getter) throws IOException {
+    private Map<String, KnownFile> getChildrenUnsafe(final KnownFiles knownFiles, KnownFile root, Path path)
+            throws IOException {
 
-        KnownFile dir = getUnsafe(knownFiles, root, path);
+        final KnownFile dir = getUnsafe(knownFiles, root, path);
 
         if (!dir.isDirectory())
             throw new NotDirectoryException(path);
 
+        // a partially tracked directory is retrieved completely, a write operation must not miss any child
         Map<String, KnownFile> children = dir.getChildrenOrNull();
         if (children != null)
-            return getter.apply(fileName, children);
+            return children;
 
         if (!dir.getId().isSet()) {
 
@@ -533,21 +838,15 @@ public class FileTree {
 
         } else {
 
-            List<jdbox.driveadapter.File> retrieved = drive.getChildren(dir.toFile().toDaFile());
-
-            dir.setTracked();
-
-            for (jdbox.driveadapter.File child : retrieved) {
-                File file = new File(fileIdStore, child);
-                KnownFile existing = knownFiles.get(file.getId());
-                if (existing != null)
-                    dir.tryAddChild(existing);
-                else
-                    dir.tryAddChild(knownFiles.create(file));
-            }
+            localState.update(new RemoteReadVoid() {
+                @Override
+                public void run(Uploader.Fence fence) throws IOException {
+                    track(knownFiles, dir, retrieveChildren(dir.toFile(), fence), fence);
+                }
+            });
         }
 
-        return getter.apply(fileName, dir.getChildrenOrNull());
+        return dir.getChildrenOrNull();
     }
 
     private void updateFileEtag(final FileId fileId, final String etag) {
@@ -585,44 +884,110 @@ public class FileTree {
         });
     }
 
-    private void retrieveAndApplyChanges() {
+    private boolean tryLoadSnapshot(String rootFolderId) {
+
+        if (config.snapshotFile == null)
+            return false;
 
         try {
 
-            localState.tryUpdate(new RemoteReadVoid() {
-                @Override
-                public void run() throws IOException {
+            KnownFilesSnapshot snapshot = localState.loadSnapshot(config.snapshotFile, rootFolderId);
 
-                    final DriveAdapter.Changes changes = drive.getChanges(localState.getLargestChangeId() + 1);
+            if (snapshot == null)
+                return false;
 
-                    logger.debug("got {} changes, largest is {}", changes.items.size(), changes.largestChangeId);
+            logger.info(
+                    "loaded {} known files, largest change id is {}",
+                    snapshot.getFileCount(), snapshot.getLargestChangeId());
 
-                    if (changes.items.size() == 0)
-                        return;
+            return true;
 
-                    localState.update(new LocalUpdateSafe() {
-                        @Override
-                        public void run(KnownFiles knownFiles, Uploader uploader) {
+        } catch (IOException e) {
+            logger.warn("could not load a snapshot of known files, starting from scratch", e);
+            return false;
+        }
+    }
 
-                            knownFiles.setLargestChangeId(changes.largestChangeId);
+    private void trySaveSnapshot() {
 
-                            for (DriveAdapter.Change change : changes.items)
-                                tryApplyChange(knownFiles, uploader, change);
-                        }
-                    });
-                }
-            }, 5, TimeUnit.SECONDS);
+        if (config.snapshotFile == null)
+            return;
 
+        try {
+            if (!localState.saveSnapshot(config.snapshotFile))
+                logger.debug("snapshot of known files has been postponed, there are pending uploads");
         } catch (IOException e) {
-            logger.error("an error occured retrieving a list of changes", e);
+            logger.error("an error occured while saving a snapshot of known files", e);
+        }
+    }
+
+    private void retrieveAndApplyChanges() {
+
+        synchronized (changeFeedLock) {
+
+            try {
+
+                localState.update(new RemoteReadVoid() {
+                    @Override
+                    public void run(final Uploader.Fence fence) throws IOException {
+
+                        long largestChangeId = drive.getChanges(
+                                localState.getLargestChangeId() + 1,
+                                new DriveAdapter.PageHandler<DriveAdapter.Change>() {
+                                    @Override
+                                    public void apply(List<DriveAdapter.Change> changes) throws IOException {
+                                        fence.awaitIdAssignments();
+                                        applyChanges(changes, fence);
+                                    }
+                                });
+
+                        logger.debug("changes have been applied, largest is {}", largestChangeId);
+                    }
+                });
+
+            } catch (IOException e) {
+                logger.error("an error occured retrieving a list of changes", e);
+            }
         }
     }
 
-    private void tryApplyChange(KnownFiles knownFiles, Uploader uploader, DriveAdapter.Change change) {
+    /**
+     * Every page of changes is applied separately, so that the write lock is not held for the whole catch-up and a
+     * failure does not discard pages that have been applied already. Change events are emitted once the write lock
+     * is released, subscribers take locks of their own.
+     */
+    private void applyChanges(final List<DriveAdapter.Change> changes, final Uploader.Fence fence) {
+
+        if (changes.size() == 0)
+            return;
+
+        logger.debug("applying {} changes", changes.size());
+
+        final List<RemoteFileChangeEvent> events = new ArrayList<>();
+
+        localState.update(new LocalUpdateSafe() {
+            @Override
+            public void run(KnownFiles knownFiles, Uploader uploader) {
+
+                for (DriveAdapter.Change change : changes)
+                    tryApplyChange(knownFiles, fence, change, events);
+
+                knownFiles.setLargestChangeId(
+                        Math.max(knownFiles.getLargestChangeId(), changes.get(changes.size() - 1).id));
+            }
+        });
+
+        for (RemoteFileChangeEvent event : events)
+            remoteFileChangeEvent.onNext(event);
+    }
+
+    private void tryApplyChange(
+            KnownFiles knownFiles, Uploader.Fence fence, DriveAdapter.Change change,
+            List<RemoteFileChangeEvent> events) {
 
         FileId changedFileId = fileIdStore.get(change.fileId);
 
-        if (uploader.fileIsQueued(changedFileId))
+        if (fence.isTouched(changedFileId))
             return;
 
         File changedFile = change.file != null ? new File(fileIdStore, change.file) : null;
@@ -650,6 +1015,8 @@ public class FileTree {
                 for (KnownFile parent : currentFile.getParents())
                     parent.tryRemoveChild(currentFile);
 
+                events.add(new RemoteFileChangeEvent(changedFileId, null));
+
             } else {
 
                 logger.debug("updating existing file with {}", changedFile);
@@ -669,6 +1036,8 @@ public class FileTree {
                     if (!changedFile.getParentIds().contains(parent.getId()))
                         parent.tryRemoveChild(currentFile);
                 }
+
+                events.add(new RemoteFileChangeEvent(changedFileId, changedFile));
             }
         }
     }
@@ -708,7 +1077,22 @@ public class FileTree {
     }
 
     private interface Getter<T> {
-        T apply(String fileName, Map<String, KnownFile> files);
+        T apply(String fileName, FileNode dir, KnownFilesVersion version);
+    }
+
+    /**
+     * Stops retrieval of children that cannot be merged anymore.
+     */
+    private static class InterruptedListingException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        // otherwise the list is not needed anymore
+        public final boolean isOutdated;
+
+        public InterruptedListingException(boolean isOutdated) {
+            this.isOutdated = isOutdated;
+        }
     }
 
     private abstract class FilePropertiesLocalUpdate implements LocalUpdate<File> {
@@ -736,4 +1120,27 @@ public class FileTree {
         public abstract KnownFile run(
                 KnownFile existing, KnownFile parent, KnownFiles knownFiles, Uploader uploader) throws IOException;
     }
+
+    public static class Config {
+
+        /**
+         * Known files are saved to this file and loaded from it on start, null disables snapshots.
+         */
+        public final java.io.File snapshotFile;
+
+        /**
+         * In seconds.
+         */
+        public final int snapshotPeriod;
+
+        public Config() {
+            snapshotFile = null;
+            snapshotPeriod = 300;
+        }
+
+        public Config(java.io.File snapshotFile, int snapshotPeriod) {
+            this.snapshotFile = snapshotFile;
+            this.snapshotPeriod = snapshotPeriod;
+        }
+    }
 }
@@ -2,7 +2,12 @@ package jdbox.filetree;
 
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 import jdbox.modules.ActiveModule;
+import rx.Observable;
+import rx.Observer;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 
 import java.io.IOException;
 
@@ -16,7 +21,12 @@ public class FileTreeModule extends ActiveModule {
 
     @Override
     protected void configure() {
+        bind(FileTree.Config.class).toInstance(FileTree.defaultConfig);
         bind(FileTree.class).in(Singleton.class);
+
+        Subject<RemoteFileChangeEvent, RemoteFileChangeEvent> remoteFileChangeEvent = PublishSubject.create();
+        bind(new TypeLiteral<Observable<RemoteFileChangeEvent>>() {}).toInstance(remoteFileChangeEvent);
+        bind(new TypeLiteral<Observer<RemoteFileChangeEvent>>() {}).toInstance(remoteFileChangeEvent);
     }
 
     @Override
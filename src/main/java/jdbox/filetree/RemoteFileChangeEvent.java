@@ -0,0 +1,20 @@
+package jdbox.filetree;
+
+import jdbox.models.File;
+import jdbox.models.fileids.FileId;
+
+/**
+ * Is published when the change feed reports that a known file has been modified or removed remotely.
+ */
+public class RemoteFileChangeEvent {
+
+    public final FileId fileId;
+
+    // null if the file has been removed or trashed
+    public final File file;
+
+    public RemoteFileChangeEvent(FileId fileId, File file) {
+        this.fileId = fileId;
+        this.file = file;
+    }
+}
@@ -3,11 +3,21 @@ package jdbox.localstate;
 import com.google.inject.Inject;
 import jdbox.localstate.interfaces.*;
 import jdbox.localstate.knownfiles.KnownFiles;
+import jdbox.localstate.knownfiles.KnownFilesSnapshot;
+import jdbox.localstate.knownfiles.KnownFilesVersion;
+import jdbox.localstate.knownfiles.PathCache;
 import jdbox.models.fileids.FileIdStore;
 import jdbox.uploader.Uploader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -22,13 +32,12 @@ public class LocalState {
     // while read operations are in progress.
     // Write lock is acquired on:
     // 1. knownFiles modifications. This ensures consistent modification of its state.
-    // 1. FileTree public write operations. This ensures consistent modification of knownFiles and
+    // 2. FileTree public write operations. This ensures consistent modification of knownFiles and
     //    correct order of operations submitted to the Uploader.
-    // 2. Retrieval of the list of files in a directory. The primary goal is to prevent concurrent retrieval of
-    //    the list of files in one directory. Although this also prevents any other write & read operations
-    //    on the FileTree, it is not considered a problem at the moment, because:
-    //      a. Directory contents are cached and retrieval do not seem to be frequent.
-    //      b. Implementing more fine-grained locking would require considerable effort.
+    // Retrieval of the list of files in a directory is done without the lock, only merging of the retrieved list into
+    // knownFiles is done under the write lock, see FileTree.fetch.
+    // Every update publishes a new immutable version of knownFiles before the write lock is released, readers that
+    // do not need anything beyond the metadata of files use it without any locking, see getVersion.
     private final ReadWriteLock localStateLock = new ReentrantReadWriteLock();
 
     @Inject
@@ -73,12 +82,68 @@ public class LocalState {
         });
     }
 
+    /**
+     * Writes a snapshot of known files to the given file, unless there are local changes that have not been uploaded
+     * yet, in which case the snapshot would not match the largest change id.
+     *
+     * @return Whether the snapshot has been written.
+     */
+    public boolean saveSnapshot(java.io.File file) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        localStateLock.readLock().lock();
+        try {
+            if (uploader.getQueueCount() != 0)
+                return false;
+            KnownFilesSnapshot.write(knownFiles, new DataOutputStream(bytes));
+        } finally {
+            localStateLock.readLock().unlock();
+        }
+
+        Path temp = Paths.get(file.getPath() + ".part");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return true;
+    }
+
+    /**
+     * Replaces known files with the snapshot stored in the given file, if the snapshot has the given root.
+     *
+     * @return The snapshot that has been loaded or null.
+     */
+    public KnownFilesSnapshot loadSnapshot(java.io.File file, String rootId) throws IOException {
+
+        if (!file.exists())
+            return null;
+
+        final KnownFilesSnapshot snapshot = KnownFilesSnapshot.read(
+                new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath()))), fileIdStore);
+
+        if (!snapshot.getRootId().equals(rootId))
+            return null;
+
+        update(new LocalUpdateSafe() {
+            @Override
+            public void run(KnownFiles knownFiles, Uploader uploader) {
+                snapshot.restore(knownFiles, fileIdStore);
+            }
+        });
+
+        return snapshot;
+    }
+
     public <T> T update(LocalUpdate<T> localUpdate) throws IOException {
         localStateLock.writeLock().lock();
         try {
             return localUpdate.run(knownFiles, uploader);
         } finally {
-            localStateLock.writeLock().unlock();
+            try {
+                knownFiles.publish();
+            } finally {
+                localStateLock.writeLock().unlock();
+            }
         }
     }
 
@@ -87,38 +152,38 @@ public class LocalState {
         try {
             localUpdate.run(knownFiles, uploader);
         } finally {
-            localStateLock.writeLock().unlock();
+            try {
+                knownFiles.publish();
+            } finally {
+                localStateLock.writeLock().unlock();
+            }
         }
     }
 
+    /**
+     * Runs a read of the remote state concurrently with the Uploader, see Uploader.Fence.
+     */
     public <T> T update(RemoteRead<T> remoteRead) throws IOException {
-        uploader.pause();
-        try {
-            return remoteRead.run();
-        } finally {
-            uploader.resume();
+        try (Uploader.Fence fence = uploader.openFence()) {
+            return remoteRead.run(fence);
         }
     }
 
     public void update(RemoteReadVoid remoteRead) throws IOException {
-        uploader.pause();
-        try {
-            remoteRead.run();
-        } finally {
-            uploader.resume();
+        try (Uploader.Fence fence = uploader.openFence()) {
+            remoteRead.run(fence);
         }
     }
 
-    public void tryUpdate(RemoteReadVoid remoteRead, int timeout, TimeUnit unit) throws IOException {
-
-        if (!uploader.tryPause(timeout, unit))
-            return;
+    /**
+     * @return The latest published version of known files, does not block.
+     */
+    public KnownFilesVersion getVersion() {
+        return knownFiles.getVersion();
+    }
 
-        try {
-            remoteRead.run();
-        } finally {
-            uploader.resume();
-        }
+    public PathCache getPathCache() {
+        return knownFiles.getPathCache();
     }
 
     public <T> T read(LocalRead<T> localRead) throws IOException {
@@ -1,7 +1,9 @@
 package jdbox.localstate.interfaces;
 
+import jdbox.uploader.Uploader;
+
 import java.io.IOException;
 
 public interface RemoteRead<T> {
-    T run() throws IOException;
+    T run(Uploader.Fence fence) throws IOException;
 }
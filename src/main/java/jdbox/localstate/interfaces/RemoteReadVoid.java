@@ -1,7 +1,9 @@
 package jdbox.localstate.interfaces;
 
+import jdbox.uploader.Uploader;
+
 import java.io.IOException;
 
 public interface RemoteReadVoid {
-    void run() throws IOException;
+    void run(Uploader.Fence fence) throws IOException;
 }
@@ -0,0 +1,65 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.models.File;
+import jdbox.models.FileAttributes;
+import jdbox.models.fileids.FileId;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable version of a known file, see KnownFilesVersion. Shares its attributes, parent ids and children with
+ * the known file as long as they are not modified.
+ */
+public final class FileNode {
+
+    final KnownFile knownFile;
+    private final FileAttributes attributes;
+    private final FileId[] parentIds;
+    final PersistentMap<String, KnownFile> children;
+    private final boolean isPartial;
+
+    FileNode(
+            KnownFile knownFile, FileAttributes attributes, FileId[] parentIds,
+            PersistentMap<String, KnownFile> children, boolean isPartial) {
+        this.knownFile = knownFile;
+        this.attributes = attributes;
+        this.parentIds = parentIds;
+        this.children = children;
+        this.isPartial = isPartial;
+    }
+
+    public FileId getId() {
+        return attributes.getId();
+    }
+
+    public boolean isDirectory() {
+        return attributes.isDirectory();
+    }
+
+    /**
+     * @return Whether all children are known, a partially tracked directory knows only some of them.
+     */
+    public boolean isTracked() {
+        return children != null && !isPartial;
+    }
+
+    /**
+     * @return Names of the children or null if the directory is not tracked.
+     */
+    public Set<String> getChildNamesOrNull() {
+        return isTracked() ? children.keySet() : null;
+    }
+
+    /**
+     * Unlike toFile, does not allocate anything.
+     */
+    public FileAttributes getAttributes() {
+        return attributes;
+    }
+
+    public File toFile() {
+        return attributes.toFile(new HashSet<>(Arrays.asList(parentIds)));
+    }
+}
@@ -1,7 +1,9 @@
 package jdbox.localstate.knownfiles;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import jdbox.models.File;
+import jdbox.models.FileAttributes;
 import jdbox.models.fileids.FileId;
 
 import java.util.*;
@@ -24,84 +26,155 @@ public class KnownFile {
         put("application/vnd.google-apps.spreadsheet", "desktop");
     }});
 
-    private File self;
+    private static final FileId[] noIds = new FileId[0];
+    private static final KnownFile[] noParents = new KnownFile[0];
+    private static final String[] noNames = new String[0];
 
-    private Map<String, KnownFile> children;
-    private final HashMap<KnownFile, String> parents = new HashMap<>();
+    private FileAttributes attributes;
+
+    // arrays are never modified in place, so that they can be shared with published versions
+    private FileId[] parentIds;
+    private KnownFile[] parents = noParents;
+    private String[] namesInParents = noNames;
+
+    private PersistentMap<String, KnownFile> children;
+
+    // set while children are merged page by page, until then they are not a complete list
+    private boolean isPartial;
+
+    // set for files created by this session until their first content is submitted, it is not saved in snapshots
+    private boolean isCreatedEmpty;
 
     private final KnownFiles knownFiles;
 
     KnownFile(FileId fileId, String name, boolean isDirectory, Date createdDate, KnownFiles knownFiles) {
 
-        self = new File(fileId);
-        self.setName(name);
-        self.setIsDirectory(isDirectory);
-        self.setCreatedDate(createdDate);
+        File file = new File(fileId);
+        file.setName(name);
+        file.setIsDirectory(isDirectory);
+        file.setCreatedDate(createdDate);
+
+        attributes = new FileAttributes(file);
+        parentIds = noIds;
 
         this.knownFiles = knownFiles;
     }
 
     KnownFile(File file, KnownFiles knownFiles) {
-        self = file.clone();
+        attributes = new FileAttributes(file);
+        parentIds = file.getParentIds().isEmpty() ? noIds : file.getParentIds().toArray(noIds);
         this.knownFiles = knownFiles;
     }
 
     public FileId getId() {
-        return self.getId();
+        return attributes.getId();
     }
 
     public String getName() {
-        return self.getName();
+        return attributes.getName();
     }
 
     public boolean isDirectory() {
-        return self.isDirectory();
+        return attributes.isDirectory();
+    }
+
+    public String getMd5Sum() {
+        return attributes.getMd5Sum();
     }
 
     public Set<KnownFile> getParents() {
-        return Collections.unmodifiableSet(parents.keySet());
+        return ImmutableSet.copyOf(parents);
     }
 
-    public void setUploaded(String id, String mimeType, String downloadUrl, String alternateLink) {
-        self.getId().set(id);
-        self.setMimeType(mimeType);
-        self.setDownloadUrl(downloadUrl);
-        self.setAlternateLink(alternateLink);
+    int getParentCount() {
+        return parents.length;
+    }
+
+    KnownFile getParent(int index) {
+        return parents[index];
+    }
+
+    String getNameInParent(int index) {
+        return namesInParents[index];
+    }
+
+    public void setRemoteProperties(String mimeType, String downloadUrl, String alternateLink) {
+        attributes = attributes.withRemoteProperties(mimeType, downloadUrl, alternateLink);
+        changed();
     }
 
     public void setDates(Date modifiedDate, Date accessedDate) {
-        self.setModifiedDate(modifiedDate);
-        self.setAccessedDate(accessedDate);
+        attributes = attributes.withDates(modifiedDate, accessedDate);
+        changed();
     }
 
     public void setContentProperties(long size, String md5Sum) {
-        self.setSize(size);
-        self.setMd5Sum(md5Sum);
+        String previous = attributes.getMd5Sum();
+        attributes = attributes.withContentProperties(size, md5Sum);
+        knownFiles.md5Changed(this, previous);
+        changed();
+    }
+
+    /**
+     * @return Whether the file has been created empty by this session and no content has been submitted for it yet,
+     * so that nobody else could have seen it.
+     */
+    public boolean isCreatedEmpty() {
+        return isCreatedEmpty;
+    }
+
+    public void setCreatedEmpty(boolean isCreatedEmpty) {
+        this.isCreatedEmpty = isCreatedEmpty;
     }
 
     public void setEtag(String etag) {
-        self.setEtag(etag);
+        attributes = attributes.withEtag(etag);
+        changed();
     }
 
+    /**
+     * Marks the list of children as complete, children that are already known are kept.
+     */
     public void setTracked() {
-        children = new HashMap<>();
+        if (children == null)
+            children = PersistentMap.empty();
+        isPartial = false;
+        changed();
+    }
+
+    /**
+     * Starts tracking children before all of them are known. They are looked up, but the directory is not considered
+     * tracked until setTracked is called.
+     */
+    public void setPartiallyTracked() {
+        if (children != null)
+            return;
+        children = PersistentMap.empty();
+        isPartial = true;
+        changed();
     }
 
+    public boolean isTracked() {
+        return children != null && !isPartial;
+    }
+
+    /**
+     * @return Immutable map of children or null if the directory is not tracked or is tracked only partially.
+     */
     public Map<String, KnownFile> getChildrenOrNull() {
-        if (children == null)
-            return null;
-        return Collections.unmodifiableMap(children);
+        return isPartial ? null : children;
     }
 
     public void tryAddChild(KnownFile child) {
 
-        child.self.getParentIds().add(getId());
+        child.addParentId(getId());
+        child.changed();
 
         if (children == null)
             return;
 
-        String extension = extensions.get(child.self.getMimeType());
-        String nameWoExtension = child.self.getName();
+        String extension = extensions.get(child.attributes.getMimeType());
+        String nameWoExtension = child.getName();
 
         if (extension != null && nameWoExtension.endsWith(extension))
             nameWoExtension = nameWoExtension.substring(0, nameWoExtension.length() - extension.length() - 1);
@@ -126,8 +199,10 @@ public class KnownFile {
 
         } while (existing != null);
 
-        children.put(knownByName, child);
-        child.parents.put(this, knownByName);
+        children = children.plus(knownByName, child);
+        child.addParent(this, knownByName);
+        changed();
+        knownFiles.linked(this, knownByName);
 
         KnownFile previous = knownFiles.put(child);
         if (previous != null && previous != child)
@@ -143,34 +218,114 @@ public class KnownFile {
         if (getName().equals(name))
             return;
 
-        Set<KnownFile> parents = new HashSet<>(this.parents.keySet());
+        KnownFile[] parents = this.parents;
 
         for (KnownFile parent : parents)
             parent.tryRemoveChild(this, false);
 
-        self.setName(name);
+        attributes = attributes.withName(name);
+        changed();
 
         for (KnownFile parent : parents)
             parent.tryAddChild(this);
     }
 
     public void update(File file) {
-        self.update(file);
+        String previous = attributes.getMd5Sum();
+        attributes = attributes.withUpdate(file);
+        knownFiles.md5Changed(this, previous);
+        changed();
     }
 
     public File toFile() {
-        return self.clone();
+        return attributes.toFile(new HashSet<>(Arrays.asList(parentIds)));
+    }
+
+    public FileAttributes getAttributes() {
+        return attributes;
+    }
+
+    FileNode toNode() {
+        return new FileNode(this, attributes, parentIds, children, isPartial);
+    }
+
+    private void changed() {
+        knownFiles.changed(this);
+    }
+
+    private void addParentId(FileId parentId) {
+        for (FileId id : parentIds) {
+            if (id == parentId)
+                return;
+        }
+        parentIds = Arrays.copyOf(parentIds, parentIds.length + 1);
+        parentIds[parentIds.length - 1] = parentId;
+    }
+
+    private void removeParentId(FileId parentId) {
+        for (int i = 0; i < parentIds.length; i++) {
+            if (parentIds[i] == parentId) {
+                parentIds = parentIds.length == 1 ? noIds : remove(parentIds, i);
+                return;
+            }
+        }
+    }
+
+    private void addParent(KnownFile parent, String name) {
+
+        for (int i = 0; i < parents.length; i++) {
+            if (parents[i] == parent) {
+                namesInParents = namesInParents.clone();
+                namesInParents[i] = name;
+                return;
+            }
+        }
+
+        parents = Arrays.copyOf(parents, parents.length + 1);
+        parents[parents.length - 1] = parent;
+        namesInParents = Arrays.copyOf(namesInParents, namesInParents.length + 1);
+        namesInParents[namesInParents.length - 1] = name;
+    }
+
+    private String getNameIn(KnownFile parent) {
+        for (int i = 0; i < parents.length; i++) {
+            if (parents[i] == parent)
+                return namesInParents[i];
+        }
+        return null;
+    }
+
+    private void removeParent(KnownFile parent) {
+        for (int i = 0; i < parents.length; i++) {
+            if (parents[i] == parent) {
+                parents = parents.length == 1 ? noParents : remove(parents, i);
+                namesInParents = namesInParents.length == 1 ? noNames : remove(namesInParents, i);
+                return;
+            }
+        }
+    }
+
+    private static <T> T[] remove(T[] array, int index) {
+        T[] copy = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+        return copy;
     }
 
     private void tryRemoveChild(KnownFile child, boolean cleanUp) {
 
-        child.self.getParentIds().remove(getId());
+        child.removeParentId(getId());
+        child.changed();
 
         if (children == null)
             return;
 
-        children.remove(child.parents.get(this));
-        child.parents.remove(this);
+        String knownByName = child.getNameIn(this);
+        if (knownByName != null)
+            knownFiles.unlinked(this, knownByName, child);
+
+        children = children.minus(knownByName);
+        child.removeParent(this);
+        changed();
 
         if (cleanUp)
             child.tryRemove();
@@ -178,12 +333,11 @@ public class KnownFile {
 
     private void tryRemove() {
 
-        if (parents.size() != 0)
+        if (parents.length != 0)
             return;
 
         knownFiles.remove(this);
 
-        Map<String, KnownFile> children = getChildrenOrNull();
         if (children != null) {
             for (KnownFile child : new LinkedList<>(children.values()))
                 tryRemoveChild(child);
@@ -196,7 +350,7 @@ public class KnownFile {
                 "id=" + getId() +
                 ", name='" + getName() + '\'' +
                 ", isDirectory=" + isDirectory() +
-                ", size=" + self.getSize() +
+                ", size=" + attributes.getSize() +
                 '}';
     }
 }
@@ -3,31 +3,59 @@ package jdbox.localstate.knownfiles;
 import jdbox.models.File;
 import jdbox.models.fileids.FileId;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * This class is not thread safe, all synchronization should be done externally.
+ * This class is not thread safe, all synchronization should be done externally, except for getVersion which may be
+ * called concurrently with modifications.
  */
 public class KnownFiles {
 
     private volatile KnownFile root;
 
     private final Map<FileId, KnownFile> entries = new HashMap<>();
+    // either a single KnownFile or a Set of them, most md5 sums belong to a single file
+    private final Map<String, Object> byMd5 = new HashMap<>();
 
     private volatile long largestChangeId = 0;
 
     private volatile KnownFile uploadFailureNotificationFile;
 
+    // files that have been modified since the last published version
+    private final Set<KnownFile> changed = new HashSet<>();
+    private boolean reset = false;
+
+    // paths that have been unlinked since the last published version
+    private final List<String> unlinkedPaths = new ArrayList<>();
+    private final List<String> unlinkedDirectories = new ArrayList<>();
+    private final List<String> linkedPaths = new ArrayList<>();
+
+    private final PathCache pathCache = new PathCache(this);
+
+    private volatile KnownFilesVersion version = KnownFilesVersion.empty;
+
     public KnownFile getRoot() {
         return root;
     }
 
     public void setRoot(FileId rootId) {
-        if (root != null)
+        if (root != null) {
             entries.clear();
+            byMd5.clear();
+        }
         root = new KnownFile(rootId, "{root}", true, null, this);
+        changed.clear();
+        unlinkedPaths.clear();
+        unlinkedDirectories.clear();
+        linkedPaths.clear();
+        reset = true;
         put(root);
     }
 
@@ -59,10 +87,79 @@ public class KnownFiles {
         return entries.get(id);
     }
 
+    /**
+     * @return Known files that have the given md5 sum.
+     */
+    public Set<KnownFile> getByMd5(String md5) {
+        Object files = byMd5.get(md5);
+        if (files == null)
+            return Collections.emptySet();
+        if (files instanceof KnownFile)
+            return Collections.singleton((KnownFile) files);
+        return Collections.unmodifiableSet(asSet(files));
+    }
+
     public int getFileCount() {
         return entries.size();
     }
 
+    /**
+     * @return The last published version.
+     */
+    public KnownFilesVersion getVersion() {
+        return version;
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    /**
+     * Publishes a new version that reflects all modifications made since the previous one.
+     */
+    public KnownFilesVersion publish() {
+
+        KnownFilesVersion current = version;
+
+        if (changed.isEmpty() && !reset && current.getLargestChangeId() == largestChangeId)
+            return current;
+
+        PersistentMap<KnownFile, FileNode> nodes =
+                reset ? PersistentMap.<KnownFile, FileNode>empty() : current.nodes;
+
+        for (KnownFile file : changed) {
+            if (entries.get(file.getId()) == file)
+                nodes = nodes.plus(file, file.toNode());
+            else
+                nodes = nodes.minus(file);
+        }
+
+        changed.clear();
+
+        if (!reset && unlinkedPaths.isEmpty() && linkedPaths.isEmpty()) {
+            version = new KnownFilesVersion(root, nodes, largestChangeId);
+            return version;
+        }
+
+        pathCache.beginInvalidation();
+        try {
+            version = new KnownFilesVersion(root, nodes, largestChangeId);
+            if (reset)
+                pathCache.invalidateAll();
+            else
+                pathCache.invalidate(unlinkedPaths, unlinkedDirectories, linkedPaths);
+        } finally {
+            pathCache.endInvalidation();
+        }
+
+        unlinkedPaths.clear();
+        unlinkedDirectories.clear();
+        linkedPaths.clear();
+        reset = false;
+
+        return version;
+    }
+
     public int getTrackedDirCount() {
         return getTrackedDirCount(root);
     }
@@ -84,10 +181,97 @@ public class KnownFiles {
     }
 
     KnownFile put(KnownFile file) {
-        return entries.put(file.getId(), file);
+        KnownFile previous = entries.put(file.getId(), file);
+        if (previous == null)
+            index(file, file.getMd5Sum());
+        changed.add(file);
+        return previous;
     }
 
     void remove(KnownFile file) {
-        entries.remove(file.getId());
+        if (entries.remove(file.getId()) != null)
+            unindex(file, file.getMd5Sum());
+        changed.add(file);
+    }
+
+    void changed(KnownFile file) {
+        changed.add(file);
+    }
+
+    void unlinked(KnownFile parent, String name, KnownFile child) {
+
+        int count = unlinkedPaths.size();
+        collectPaths(parent, "/" + name, unlinkedPaths);
+
+        if (child.isDirectory())
+            unlinkedDirectories.addAll(unlinkedPaths.subList(count, unlinkedPaths.size()));
+    }
+
+    void linked(KnownFile parent, String name) {
+        collectPaths(parent, "/" + name, linkedPaths);
+    }
+
+    private void collectPaths(KnownFile file, String suffix, List<String> paths) {
+
+        if (file == root) {
+            paths.add(suffix);
+            return;
+        }
+
+        for (int i = 0; i < file.getParentCount(); i++)
+            collectPaths(file.getParent(i), "/" + file.getNameInParent(i) + suffix, paths);
+    }
+
+    void md5Changed(KnownFile file, String previous) {
+
+        String md5 = file.getMd5Sum();
+
+        if (entries.get(file.getId()) != file || (md5 != null ? md5.equals(previous) : previous == null))
+            return;
+
+        unindex(file, previous);
+        index(file, md5);
+    }
+
+    private void index(KnownFile file, String md5) {
+
+        if (md5 == null)
+            return;
+
+        Object files = byMd5.get(md5);
+
+        if (files == null) {
+            byMd5.put(md5, file);
+        } else if (files instanceof KnownFile) {
+            if (files != file) {
+                Set<KnownFile> set = new HashSet<>();
+                set.add((KnownFile) files);
+                set.add(file);
+                byMd5.put(md5, set);
+            }
+        } else {
+            asSet(files).add(file);
+        }
+    }
+
+    private void unindex(KnownFile file, String md5) {
+
+        if (md5 == null)
+            return;
+
+        Object files = byMd5.get(md5);
+
+        if (files == file) {
+            byMd5.remove(md5);
+        } else if (files instanceof Set) {
+            Set<KnownFile> set = asSet(files);
+            if (set.remove(file) && set.size() == 1)
+                byMd5.put(md5, set.iterator().next());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<KnownFile> asSet(Object files) {
+        return (Set<KnownFile>) files;
     }
 }
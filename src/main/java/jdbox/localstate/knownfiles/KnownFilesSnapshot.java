@@ -0,0 +1,233 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.models.File;
+import jdbox.models.fileids.FileId;
+import jdbox.models.fileids.FileIdStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Binary snapshot of known files: the root, every file reachable from it through tracked directories and the
+ * largest change id the files are consistent with. Files that do not exist in the cloud yet are not written, neither
+ * are their descendants.
+ */
+public class KnownFilesSnapshot {
+
+    private static final int magic = 0x4a44424b;
+    private static final int version = 1;
+
+    private static final int directoryFlag = 1;
+    private static final int trackedFlag = 2;
+
+    private final String rootId;
+    private final boolean rootIsTracked;
+    private final long largestChangeId;
+    private final List<Entry> entries;
+
+    private KnownFilesSnapshot(String rootId, boolean rootIsTracked, long largestChangeId, List<Entry> entries) {
+        this.rootId = rootId;
+        this.rootIsTracked = rootIsTracked;
+        this.largestChangeId = largestChangeId;
+        this.entries = entries;
+    }
+
+    public String getRootId() {
+        return rootId;
+    }
+
+    public long getLargestChangeId() {
+        return largestChangeId;
+    }
+
+    public int getFileCount() {
+        return entries.size() + 1;
+    }
+
+    public static void write(KnownFiles knownFiles, DataOutput out) throws IOException {
+
+        KnownFile root = knownFiles.getRoot();
+
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeUTF(root.getId().get());
+        out.writeBoolean(root.getChildrenOrNull() != null);
+        out.writeLong(knownFiles.getLargestChangeId());
+
+        List<KnownFile> files = new ArrayList<>();
+        Map<KnownFile, Boolean> visited = new IdentityHashMap<>();
+        Queue<KnownFile> queue = new LinkedList<>();
+
+        visited.put(root, true);
+        queue.add(root);
+
+        while (!queue.isEmpty()) {
+
+            Map<String, KnownFile> children = queue.remove().getChildrenOrNull();
+            if (children == null)
+                continue;
+
+            for (KnownFile child : children.values()) {
+
+                if (visited.containsKey(child) || !child.getId().isSet() ||
+                        child == knownFiles.getUploadFailureNotificationFile())
+                    continue;
+
+                visited.put(child, true);
+                files.add(child);
+                queue.add(child);
+            }
+        }
+
+        out.writeInt(files.size());
+
+        for (KnownFile file : files) {
+
+            File self = file.toFile();
+
+            out.writeUTF(self.getId().get());
+            out.writeByte(
+                    (self.isDirectory() ? directoryFlag : 0) | (file.getChildrenOrNull() != null ? trackedFlag : 0));
+            out.writeUTF(self.getName());
+            out.writeLong(self.getSize());
+            writeString(out, self.getMd5Sum());
+            writeString(out, self.getEtag());
+            writeString(out, self.getMimeType());
+            writeString(out, self.getDownloadUrl());
+            writeString(out, self.getAlternateLink());
+            writeDate(out, self.getCreatedDate());
+            writeDate(out, self.getModifiedDate());
+            writeDate(out, self.getAccessedDate());
+
+            List<String> parentIds = new ArrayList<>();
+            for (KnownFile parent : file.getParents()) {
+                if (visited.containsKey(parent))
+                    parentIds.add(parent.getId().get());
+            }
+
+            out.writeInt(parentIds.size());
+            for (String parentId : parentIds)
+                out.writeUTF(parentId);
+        }
+    }
+
+    public static KnownFilesSnapshot read(DataInput in, FileIdStore fileIdStore) throws IOException {
+
+        if (in.readInt() != magic)
+            throw new IOException("not a snapshot of known files");
+
+        int actualVersion = in.readInt();
+        if (actualVersion != version)
+            throw new IOException("unsupported snapshot version " + actualVersion);
+
+        String rootId = in.readUTF();
+        boolean rootIsTracked = in.readBoolean();
+        long largestChangeId = in.readLong();
+
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            File file = new File(fileIdStore.get(in.readUTF()));
+
+            int flags = in.readByte();
+            file.setIsDirectory((flags & directoryFlag) != 0);
+            file.setName(in.readUTF());
+            file.setSize(in.readLong());
+            file.setMd5Sum(readString(in));
+            file.setEtag(readString(in));
+            file.setMimeType(readString(in));
+            file.setDownloadUrl(readString(in));
+            file.setAlternateLink(readString(in));
+            file.setCreatedDate(readDate(in));
+            file.setModifiedDate(readDate(in));
+            file.setAccessedDate(readDate(in));
+
+            int parentCount = in.readInt();
+            List<FileId> parentIds = new ArrayList<>(parentCount);
+            for (int j = 0; j < parentCount; j++)
+                parentIds.add(fileIdStore.get(in.readUTF()));
+
+            entries.add(new Entry(file, (flags & trackedFlag) != 0, parentIds));
+        }
+
+        return new KnownFilesSnapshot(rootId, rootIsTracked, largestChangeId, entries);
+    }
+
+    /**
+     * Replaces the content of knownFiles with the content of this snapshot.
+     */
+    public void restore(KnownFiles knownFiles, FileIdStore fileIdStore) {
+
+        knownFiles.setRoot(fileIdStore.get(rootId));
+        knownFiles.setLargestChangeId(largestChangeId);
+
+        KnownFile root = knownFiles.getRoot();
+        if (rootIsTracked)
+            root.setTracked();
+
+        Map<FileId, KnownFile> files = new HashMap<>();
+        files.put(root.getId(), root);
+
+        List<KnownFile> created = new ArrayList<>(entries.size());
+
+        for (Entry entry : entries) {
+            KnownFile file = knownFiles.create(entry.file);
+            if (entry.isTracked)
+                file.setTracked();
+            files.put(file.getId(), file);
+            created.add(file);
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            for (FileId parentId : entries.get(i).parentIds) {
+                KnownFile parent = files.get(parentId);
+                if (parent != null)
+                    parent.tryAddChild(created.get(i));
+            }
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate(DataOutput out, Date value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeLong(value.getTime());
+    }
+
+    private static Date readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+
+    private static class Entry {
+
+        public final File file;
+        public final boolean isTracked;
+        public final List<FileId> parentIds;
+
+        private Entry(File file, boolean isTracked, List<FileId> parentIds) {
+            this.file = file;
+            this.isTracked = isTracked;
+            this.parentIds = parentIds;
+        }
+    }
+}
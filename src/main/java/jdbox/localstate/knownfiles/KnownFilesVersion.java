@@ -0,0 +1,48 @@
+package jdbox.localstate.knownfiles;
+
+/**
+ * An immutable version of known files. A new version is published at the end of every update of known files, it
+ * shares all unchanged nodes with the previous one, so that readers can use a consistent version of known files
+ * without any locking, while writers go on modifying them.
+ */
+public final class KnownFilesVersion {
+
+    static final KnownFilesVersion empty =
+            new KnownFilesVersion(null, PersistentMap.<KnownFile, FileNode>empty(), 0);
+
+    private final KnownFile root;
+    final PersistentMap<KnownFile, FileNode> nodes;
+    private final long largestChangeId;
+
+    KnownFilesVersion(KnownFile root, PersistentMap<KnownFile, FileNode> nodes, long largestChangeId) {
+        this.root = root;
+        this.nodes = nodes;
+        this.largestChangeId = largestChangeId;
+    }
+
+    public FileNode getRoot() {
+        return root != null ? nodes.get(root) : null;
+    }
+
+    /**
+     * @return The child with the given name or null if there is no such child or the directory is not tracked.
+     * Children of a partially tracked directory are found as well.
+     */
+    public FileNode getChild(FileNode dir, String name) {
+
+        if (dir.children == null)
+            return null;
+
+        KnownFile child = dir.children.get(name);
+
+        return child != null ? nodes.get(child) : null;
+    }
+
+    public int getFileCount() {
+        return nodes.size();
+    }
+
+    public long getLargestChangeId() {
+        return largestChangeId;
+    }
+}
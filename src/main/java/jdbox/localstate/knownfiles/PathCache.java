@@ -0,0 +1,162 @@
+package jdbox.localstate.knownfiles;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps full paths to known files, so that a repeated lookup of a path is a single hash probe instead of a walk from
+ * the root. Metadata is always taken from the latest published version, so only unlinking of files from their parents
+ * makes entries stale. Such entries, along with all entries below them, are invalidated when the version that
+ * includes the unlinking is published.
+ * Paths that do not exist in tracked directories are cached as absent. Such entries are invalidated once a file is
+ * linked under the path or once a directory above them is unlinked.
+ * Lookups and insertions are safe to call concurrently with everything, invalidation is done by KnownFiles under its
+ * external synchronization. A generation counter, which is odd while an invalidation is in progress, tells readers
+ * whether an invalidation has happened concurrently with them, in which case they do not trust the cache.
+ */
+public class PathCache {
+
+    private static final int maxSize = 100000;
+    private static final int maxAbsentSize = 10000;
+
+    private final KnownFiles knownFiles;
+    private final ConcurrentMap<String, KnownFile> entries = new ConcurrentHashMap<>();
+    private final Set<String> absent = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong generation = new AtomicLong();
+
+    PathCache(KnownFiles knownFiles) {
+        this.knownFiles = knownFiles;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int absentSize() {
+        return absent.size();
+    }
+
+    /**
+     * @return The node of the file at the path in the latest published version or null if the path is not cached.
+     */
+    public FileNode get(String path) {
+
+        long stamp = generation.get();
+        if ((stamp & 1) != 0)
+            return null;
+
+        KnownFile file = entries.get(path);
+        if (file == null)
+            return null;
+
+        FileNode node = knownFiles.getVersion().nodes.get(file);
+
+        return generation.get() == stamp ? node : null;
+    }
+
+    /**
+     * @return Whether the path is known not to exist in the latest published version.
+     */
+    public boolean isAbsent(String path) {
+
+        long stamp = generation.get();
+        if ((stamp & 1) != 0)
+            return false;
+
+        return absent.contains(path) && generation.get() == stamp;
+    }
+
+    /**
+     * Must be called before the latest published version is taken to resolve a path that is going to be cached.
+     */
+    public long getStamp() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the result of resolving the path, unless an invalidation has started since the stamp has been taken.
+     */
+    public void put(String path, FileNode node, long stamp) {
+
+        if ((stamp & 1) != 0 || generation.get() != stamp)
+            return;
+
+        if (entries.size() >= maxSize)
+            entries.clear();
+
+        entries.put(path, node.knownFile);
+
+        // an invalidation might have missed the entry
+        if (generation.get() != stamp)
+            entries.remove(path, node.knownFile);
+    }
+
+    /**
+     * Caches the path as absent, should only be called if the parent of the path is a tracked directory.
+     */
+    public void putAbsent(String path, long stamp) {
+
+        if ((stamp & 1) != 0 || generation.get() != stamp)
+            return;
+
+        if (absent.size() >= maxAbsentSize)
+            absent.clear();
+
+        absent.add(path);
+
+        if (generation.get() != stamp)
+            absent.remove(path);
+    }
+
+    void beginInvalidation() {
+        generation.incrementAndGet();
+    }
+
+    void endInvalidation() {
+        generation.incrementAndGet();
+    }
+
+    void invalidateAll() {
+        entries.clear();
+        absent.clear();
+    }
+
+    /**
+     * Invalidates the given unlinked paths, everything below the given unlinked directories and absence of the given
+     * linked paths.
+     */
+    void invalidate(List<String> unlinked, List<String> unlinkedDirectories, List<String> linked) {
+
+        for (String path : unlinked)
+            entries.remove(path);
+
+        for (String path : linked)
+            absent.remove(path);
+
+        if (unlinkedDirectories.isEmpty())
+            return;
+
+        invalidateBelow(entries.keySet(), unlinkedDirectories);
+        invalidateBelow(absent, unlinkedDirectories);
+    }
+
+    private static void invalidateBelow(Set<String> paths, List<String> directories) {
+
+        Iterator<String> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            String cached = iterator.next();
+            for (String directory : directories) {
+                if (cached.length() > directory.length() && cached.charAt(directory.length()) == '/' &&
+                        cached.startsWith(directory)) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package jdbox.localstate.knownfiles;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash array mapped trie. Modifications return a new map that shares all unchanged nodes with this one,
+ * so a modification costs O(log32 n) regardless of the size of the map. Null keys and values are not supported.
+ * Keys are compared with equals, so objects that do not override it are compared by identity.
+ * Keys and values are stored inline in the arrays of nodes, there is no object per entry, so a small map is just a
+ * node and its array.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentMap<?, ?> empty = new PersistentMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private PersistentMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) empty;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null)
+            return null;
+        return (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public PersistentMap<K, V> plus(K key, V value) {
+
+        if (key == null || value == null)
+            throw new NullPointerException();
+
+        boolean[] added = new boolean[1];
+        BitmapNode node = root.plus(0, hash(key), key, value, added);
+
+        return node == root ? this : new PersistentMap<K, V>(node, added[0] ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> minus(Object key) {
+
+        if (key == null)
+            return this;
+
+        BitmapNode node = root.minus(0, hash(key), key);
+
+        if (node == root)
+            return this;
+
+        return size == 1 ? PersistentMap.<K, V>empty() : new PersistentMap<K, V>(node, size - 1);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new KeyIterator<>(root);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static Object[] insert(Object[] array, int index, Object key, Object value) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return copy;
+    }
+
+    private static Object[] remove(Object[] array, int index) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+        return copy;
+    }
+
+    private static Object[] replace(Object[] array, int index, Object key, Object value) {
+        Object[] copy = array.clone();
+        copy[index] = key;
+        copy[index + 1] = value;
+        return copy;
+    }
+
+    /**
+     * @return A node that holds both entries.
+     */
+    private static Object merge(
+            int shift, int hashA, Object keyA, Object valueA, int hashB, Object keyB, Object valueB) {
+
+        if (shift >= 32 || hashA == hashB)
+            return new CollisionNode(hashA, new Object[]{keyA, valueA, keyB, valueB});
+
+        int bitA = bit(hashA, shift);
+        int bitB = bit(hashB, shift);
+
+        if (bitA == bitB) {
+            return new BitmapNode(
+                    bitA, new Object[]{null, merge(shift + 5, hashA, keyA, valueA, hashB, keyB, valueB)});
+        }
+
+        // bits are compared as unsigned, the highest one is negative
+        boolean ordered = (bitA ^ Integer.MIN_VALUE) < (bitB ^ Integer.MIN_VALUE);
+
+        return new BitmapNode(bitA | bitB, ordered ?
+                new Object[]{keyA, valueA, keyB, valueB} : new Object[]{keyB, valueB, keyA, valueA});
+    }
+
+    /**
+     * Holds two array slots per set bit of the bitmap: either a key and its value or null and a child node.
+     */
+    private static final class BitmapNode {
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        Object find(int shift, int hash, Object key) {
+
+            int bit = bit(hash, shift);
+
+            if ((bitmap & bit) == 0)
+                return null;
+
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object existingKey = array[index];
+            Object existingValue = array[index + 1];
+
+            if (existingKey != null)
+                return existingKey.equals(key) ? existingValue : null;
+
+            if (existingValue instanceof BitmapNode)
+                return ((BitmapNode) existingValue).find(shift + 5, hash, key);
+
+            return ((CollisionNode) existingValue).find(hash, key);
+        }
+
+        BitmapNode plus(int shift, int hash, Object key, Object value, boolean[] added) {
+
+            int bit = bit(hash, shift);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insert(array, index, key, value));
+            }
+
+            Object existingKey = array[index];
+            Object existingValue = array[index + 1];
+
+            if (existingKey != null) {
+
+                if (existingKey.equals(key)) {
+                    if (existingValue == value)
+                        return this;
+                    return new BitmapNode(bitmap, replace(array, index, existingKey, value));
+                }
+
+                added[0] = true;
+
+                Object node = merge(shift + 5, hash(existingKey), existingKey, existingValue, hash, key, value);
+
+                return new BitmapNode(bitmap, replace(array, index, null, node));
+            }
+
+            Object node = existingValue instanceof BitmapNode ?
+                    ((BitmapNode) existingValue).plus(shift + 5, hash, key, value, added) :
+                    ((CollisionNode) existingValue).plus(shift + 5, hash, key, value, added);
+
+            if (node == existingValue)
+                return this;
+
+            return new BitmapNode(bitmap, replace(array, index, null, node));
+        }
+
+        /**
+         * @return This node if the key is not found, otherwise a node without the key, possibly an empty one.
+         */
+        BitmapNode minus(int shift, int hash, Object key) {
+
+            int bit = bit(hash, shift);
+
+            if ((bitmap & bit) == 0)
+                return this;
+
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object existingKey = array[index];
+            Object existingValue = array[index + 1];
+
+            if (existingKey != null) {
+                if (!existingKey.equals(key))
+                    return this;
+                return new BitmapNode(bitmap & ~bit, remove(array, index));
+            }
+
+            Object[] remaining;
+
+            if (existingValue instanceof BitmapNode) {
+
+                BitmapNode node = ((BitmapNode) existingValue).minus(shift + 5, hash, key);
+
+                if (node == existingValue)
+                    return this;
+
+                if (node.array.length == 0)
+                    return new BitmapNode(bitmap & ~bit, remove(array, index));
+
+                if (node.array.length != 2 || node.array[0] == null)
+                    return new BitmapNode(bitmap, replace(array, index, null, node));
+
+                remaining = node.array;
+
+            } else {
+
+                CollisionNode node = (CollisionNode) existingValue;
+                remaining = node.minus(hash, key);
+
+                if (remaining == node.array)
+                    return this;
+
+                if (remaining.length != 2)
+                    return new BitmapNode(bitmap, replace(array, index, null, new CollisionNode(node.hash, remaining)));
+            }
+
+            // a single entry is left below, pull it up
+            return new BitmapNode(bitmap, replace(array, index, remaining[0], remaining[1]));
+        }
+    }
+
+    /**
+     * Holds keys with the same hash, a key and its value per two array slots.
+     */
+    private static final class CollisionNode {
+
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        Object find(int hash, Object key) {
+
+            if (hash != this.hash)
+                return null;
+
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key))
+                    return array[i + 1];
+            }
+
+            return null;
+        }
+
+        Object plus(int shift, int hash, Object key, Object value, boolean[] added) {
+
+            if (hash != this.hash) {
+                // only possible below the last level of bitmap nodes if hashes differ in the remaining bits
+                BitmapNode node = new BitmapNode(bit(this.hash, shift), new Object[]{null, this});
+                return node.plus(shift, hash, key, value, added);
+            }
+
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key)) {
+                    if (array[i + 1] == value)
+                        return this;
+                    return new CollisionNode(hash, replace(array, i, array[i], value));
+                }
+            }
+
+            added[0] = true;
+
+            return new CollisionNode(hash, insert(array, array.length, key, value));
+        }
+
+        /**
+         * @return Keys and values that are left, the same array if the key is not found.
+         */
+        Object[] minus(int hash, Object key) {
+
+            if (hash != this.hash)
+                return array;
+
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key))
+                    return remove(array, i);
+            }
+
+            return array;
+        }
+    }
+
+    private static abstract class NodeIterator<T> implements Iterator<T> {
+
+        // arrays that are being iterated and positions in them, one per level of the trie
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = 0;
+
+        private Object nextKey;
+        private Object nextValue;
+
+        NodeIterator(BitmapNode root) {
+            arrays[0] = root.array;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        public T next() {
+
+            if (nextKey == null)
+                throw new NoSuchElementException();
+
+            T result = get(nextKey, nextValue);
+            advance();
+
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        protected abstract T get(Object key, Object value);
+
+        private void advance() {
+
+            nextKey = null;
+
+            while (depth >= 0) {
+
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+
+                if (position == array.length) {
+                    depth--;
+                    continue;
+                }
+
+                positions[depth] = position + 2;
+
+                if (array[position] != null) {
+                    nextKey = array[position];
+                    nextValue = array[position + 1];
+                    return;
+                }
+
+                Object node = array[position + 1];
+
+                depth++;
+                arrays[depth] = node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array;
+                positions[depth] = 0;
+            }
+        }
+    }
+
+    private static final class EntryIterator<K, V> extends NodeIterator<Entry<K, V>> {
+
+        EntryIterator(BitmapNode root) {
+            super(root);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Entry<K, V> get(Object key, Object value) {
+            return new SimpleImmutableEntry<>((K) key, (V) value);
+        }
+    }
+
+    private static final class KeyIterator<K> extends NodeIterator<K> {
+
+        KeyIterator(BitmapNode root) {
+            super(root);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected K get(Object key, Object value) {
+            return (K) key;
+        }
+    }
+
+    private static final class ValueIterator<V> extends NodeIterator<V> {
+
+        ValueIterator(BitmapNode root) {
+            super(root);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected V get(Object key, Object value) {
+            return (V) value;
+        }
+    }
+}
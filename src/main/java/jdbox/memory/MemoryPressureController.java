@@ -0,0 +1,225 @@
+package jdbox.memory;
+
+import com.google.inject.Inject;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Asks registered listeners to release memory once the heap is short of it. Pressure is signalled when the usage of
+ * a heap pool after a collection exceeds config.threshold of its maximum and when a collection pauses the process for
+ * longer than config.maxGcPause. Each signal goes to the next listener in the order of their priorities, lower
+ * priorities first, the last listener receives all further signals. Once a collection brings the usage back below the
+ * threshold, the next signal goes to the first listener again.
+ */
+public class MemoryPressureController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPressureController.class);
+
+    public static Config defaultConfig = new Config();
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    private final NotificationListener notificationListener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            try {
+                onNotification(notification);
+            } catch (RuntimeException e) {
+                logger.error("an error occured while handling {}", notification.getType(), e);
+            }
+        }
+    };
+
+    private volatile Config config;
+
+    // guarded by this
+    private int level = 0;
+    private long signals = 0;
+    private long released = 0;
+
+    @Inject
+    public MemoryPressureController(Config config) {
+        this.config = config;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public synchronized void init() {
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+
+            long max = pool.getUsage().getMax();
+
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() || max <= 0)
+                continue;
+
+            pool.setCollectionUsageThreshold((long) (max * config.threshold));
+            pools.add(pool);
+        }
+
+        addListener(ManagementFactory.getMemoryMXBean());
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            addListener(collector);
+
+        logger.debug("watching {} heap pools", pools.size());
+    }
+
+    public synchronized void tearDown() {
+
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(notificationListener);
+            } catch (ListenerNotFoundException e) {
+                logger.warn("notification listener has already been removed", e);
+            }
+        }
+
+        emitters.clear();
+        pools.clear();
+    }
+
+    public synchronized void register(int priority, MemoryPressureListener listener) {
+
+        registrations.add(new Registration(priority, listener));
+
+        Collections.sort(registrations, new Comparator<Registration>() {
+            @Override
+            public int compare(Registration a, Registration b) {
+                return Integer.compare(a.priority, b.priority);
+            }
+        });
+    }
+
+    public synchronized void unregister(MemoryPressureListener listener) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).listener == listener) {
+                registrations.remove(i);
+                break;
+            }
+        }
+    }
+
+    public synchronized long getSignals() {
+        return signals;
+    }
+
+    /**
+     * @return Approximate number of bytes released by listeners so far.
+     */
+    public synchronized long getReleased() {
+        return released;
+    }
+
+    /**
+     * Passes a pressure signal to the next listener.
+     */
+    public synchronized void signal() {
+
+        signals++;
+
+        if (registrations.size() == 0)
+            return;
+
+        Registration registration = registrations.get(Math.min(level, registrations.size() - 1));
+        level++;
+
+        long bytes = registration.listener.shed();
+        released += bytes;
+
+        logger.info("memory pressure, level {}, released {} bytes", level, bytes);
+    }
+
+    public synchronized void relieve() {
+        if (level != 0)
+            logger.info("memory pressure has been relieved");
+        level = 0;
+    }
+
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(notificationListener, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    private void onNotification(Notification notification) {
+
+        switch (notification.getType()) {
+
+            case MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED:
+                signal();
+                break;
+
+            case GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION:
+
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+                if (info.getGcInfo().getDuration() > config.maxGcPause)
+                    signal();
+                else if (!collectionUsageIsExceeded())
+                    relieve();
+
+                break;
+        }
+    }
+
+    private synchronized boolean collectionUsageIsExceeded() {
+
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.isCollectionUsageThresholdExceeded())
+                return true;
+        }
+
+        return false;
+    }
+
+    private static class Registration {
+
+        public final int priority;
+        public final MemoryPressureListener listener;
+
+        private Registration(int priority, MemoryPressureListener listener) {
+            this.priority = priority;
+            this.listener = listener;
+        }
+    }
+
+    public static class Config {
+
+        public final double threshold;
+        public final long maxGcPause;
+
+        public Config() {
+            threshold = 0.8;
+            maxGcPause = 1000;
+        }
+
+        public Config(double threshold, long maxGcPause) {
+            this.threshold = threshold;
+            this.maxGcPause = maxGcPause;
+        }
+    }
+}
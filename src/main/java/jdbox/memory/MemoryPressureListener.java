@@ -0,0 +1,11 @@
+package jdbox.memory;
+
+public interface MemoryPressureListener {
+
+    /**
+     * Releases memory that can be recreated or re-read later. Must not block for long.
+     *
+     * @return Approximate number of bytes released.
+     */
+    long shed();
+}
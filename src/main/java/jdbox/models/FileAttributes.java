@@ -0,0 +1,190 @@
+package jdbox.models;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import jdbox.models.fileids.FileId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Immutable metadata of a file in a compact form: times are in milliseconds since the epoch, mime types are interned
+ * and URLs, which are rarely needed, are kept as UTF-8 bytes and are turned into strings on demand.
+ * Modifications return a new instance.
+ */
+public final class FileAttributes {
+
+    public static final long unknownTime = Long.MIN_VALUE;
+
+    private static final Interner<String> mimeTypes = Interners.newWeakInterner();
+
+    private final FileId id;
+    private final String name;
+    private final boolean isDirectory;
+    private final long size;
+    private final String md5Sum;
+    private final String etag;
+    private final String mimeType;
+    private final byte[] downloadUrl;
+    private final byte[] alternateLink;
+    private final long createdTime;
+    private final long modifiedTime;
+    private final long accessedTime;
+
+    public FileAttributes(File file) {
+        this(
+                file.getId(), file.getName(), file.isDirectory(), file.getSize(), file.getMd5Sum(), file.getEtag(),
+                intern(file.getMimeType()), toBytes(file.getDownloadUrl()), toBytes(file.getAlternateLink()),
+                toTime(file.getCreatedDate()), toTime(file.getModifiedDate()), toTime(file.getAccessedDate()));
+    }
+
+    private FileAttributes(
+            FileId id, String name, boolean isDirectory, long size, String md5Sum, String etag, String mimeType,
+            byte[] downloadUrl, byte[] alternateLink, long createdTime, long modifiedTime, long accessedTime) {
+        this.id = id;
+        this.name = name;
+        this.isDirectory = isDirectory;
+        this.size = size;
+        this.md5Sum = md5Sum;
+        this.etag = etag;
+        this.mimeType = mimeType;
+        this.downloadUrl = downloadUrl;
+        this.alternateLink = alternateLink;
+        this.createdTime = createdTime;
+        this.modifiedTime = modifiedTime;
+        this.accessedTime = accessedTime;
+    }
+
+    public FileId getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getMd5Sum() {
+        return md5Sum;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public boolean hasDownloadUrl() {
+        return downloadUrl != null && downloadUrl.length != 0;
+    }
+
+    public String getDownloadUrl() {
+        return toString(downloadUrl);
+    }
+
+    public String getAlternateLink() {
+        return toString(alternateLink);
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public long getAccessedTime() {
+        return accessedTime;
+    }
+
+    public FileAttributes withName(String name) {
+        return new FileAttributes(
+                id, name, isDirectory, size, md5Sum, etag, mimeType,
+                downloadUrl, alternateLink, createdTime, modifiedTime, accessedTime);
+    }
+
+    public FileAttributes withRemoteProperties(String mimeType, String downloadUrl, String alternateLink) {
+        return new FileAttributes(
+                id, name, isDirectory, size, md5Sum, etag, intern(mimeType),
+                toBytes(downloadUrl), toBytes(alternateLink), createdTime, modifiedTime, accessedTime);
+    }
+
+    public FileAttributes withDates(Date modifiedDate, Date accessedDate) {
+        return new FileAttributes(
+                id, name, isDirectory, size, md5Sum, etag, mimeType,
+                downloadUrl, alternateLink, createdTime, toTime(modifiedDate), toTime(accessedDate));
+    }
+
+    public FileAttributes withContentProperties(long size, String md5Sum) {
+        return new FileAttributes(
+                id, name, isDirectory, size, md5Sum, etag, mimeType,
+                downloadUrl, alternateLink, createdTime, modifiedTime, accessedTime);
+    }
+
+    public FileAttributes withEtag(String etag) {
+        return new FileAttributes(
+                id, name, isDirectory, size, md5Sum, etag, mimeType,
+                downloadUrl, alternateLink, createdTime, modifiedTime, accessedTime);
+    }
+
+    /**
+     * Takes the same properties from the file as File.update does.
+     */
+    public FileAttributes withUpdate(File file) {
+        return new FileAttributes(
+                id, name, isDirectory, file.getSize(), file.getMd5Sum(), file.getEtag(), mimeType,
+                downloadUrl, alternateLink, toTime(file.getCreatedDate()), toTime(file.getModifiedDate()),
+                toTime(file.getAccessedDate()));
+    }
+
+    public File toFile(Set<FileId> parentIds) {
+
+        File file = new File(id);
+
+        file.setName(name);
+        file.setIsDirectory(isDirectory);
+        file.setSize(size);
+        file.setMd5Sum(md5Sum);
+        file.setEtag(etag);
+        file.setMimeType(mimeType);
+        file.setDownloadUrl(getDownloadUrl());
+        file.setAlternateLink(getAlternateLink());
+        file.setCreatedDate(toDate(createdTime));
+        file.setModifiedDate(toDate(modifiedTime));
+        file.setAccessedDate(toDate(accessedTime));
+        file.setParentIds(parentIds);
+
+        return file;
+    }
+
+    private static String intern(String mimeType) {
+        return mimeType != null ? mimeTypes.intern(mimeType) : null;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String toString(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    private static long toTime(Date date) {
+        return date != null ? date.getTime() : unknownTime;
+    }
+
+    private static Date toDate(long time) {
+        return time != unknownTime ? new Date(time) : null;
+    }
+}
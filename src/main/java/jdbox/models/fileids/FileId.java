@@ -1,5 +1,6 @@
 package jdbox.models.fileids;
 
+import java.util.ConcurrentModificationException;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class FileId {
@@ -30,6 +31,11 @@ public class FileId {
         store.put(value, this);
     }
 
+    void replace(String expected, String value) {
+        if (!id.compareAndSet(expected, value))
+            throw new ConcurrentModificationException("id has been changed concurrently");
+    }
+
     public boolean isSet() {
         return id.get() != null;
     }
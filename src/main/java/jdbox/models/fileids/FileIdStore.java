@@ -25,6 +25,17 @@ public class FileIdStore {
         return existingId != null ? existingId : newId;
     }
 
+    /**
+     * Makes the given FileId point to another remote file, for example to a server side copy that substitutes the
+     * original file.
+     */
+    public void replace(FileId fileId, String value) {
+        String previous = fileId.get();
+        put(value, fileId);
+        fileId.replace(previous, value);
+        entries.remove(previous, fileId);
+    }
+
     void put(String id, FileId fileId) {
         if (id == null)
             throw new IllegalArgumentException("id");
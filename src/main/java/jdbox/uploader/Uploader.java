@@ -9,12 +9,11 @@ import org.slf4j.LoggerFactory;
 import rx.Observer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Uploader {
 
@@ -26,8 +25,8 @@ public class Uploader {
     private final Observer<FileEtagUpdateEvent> fileEtagUpdateEvent;
     private final Map<FileId, Queue> queues = new HashMap<>();
     private final List<Future> futures = new LinkedList<>();
-
-    private final ReadWriteLock remoteStateLock = new ReentrantReadWriteLock(true);
+    private final List<Fence> fences = new LinkedList<>();
+    private final Set<IdAssignment> idAssignments = new HashSet<>();
 
     private volatile UploadStatus uploadStatus;
     private volatile ExecutorService executor;
@@ -113,25 +112,32 @@ public class Uploader {
         waitUntilIsDone(true, period, units);
     }
 
-    public void pause() {
-        remoteStateLock.writeLock().lock();
+    /**
+     * Opens a fence for reading the remote state without waiting for tasks to complete, see Fence.
+     */
+    public synchronized Fence openFence() {
+        Fence fence = new Fence(queues.keySet(), idAssignments);
+        fences.add(fence);
+        return fence;
     }
 
-    public boolean tryPause(int timeout, TimeUnit unit) {
+    /**
+     * Must be acquired by tasks before they give a file a new id and released once the id is set, see Fence.
+     */
+    public synchronized IdAssignment beginIdAssignment() {
 
-        boolean locked = false;
+        IdAssignment idAssignment = new IdAssignment();
+        idAssignments.add(idAssignment);
 
-        try {
-            locked = remoteStateLock.writeLock().tryLock(timeout, unit);
-        } catch (InterruptedException e) {
-            logger.debug("lock acquisition has been interrupted", e);
-        }
+        for (Fence fence : fences)
+            fence.idAssignments.add(idAssignment);
 
-        return locked;
+        return idAssignment;
     }
 
-    public void resume() {
-        remoteStateLock.writeLock().unlock();
+    private synchronized void touch(FileId fileId) {
+        for (Fence fence : fences)
+            fence.touched.add(fileId);
     }
 
     private boolean isBroken() {
@@ -186,6 +192,77 @@ public class Uploader {
         } while (futures.size() > 0);
     }
 
+    /**
+     * Tracks the tasks that run while the remote state is being read. The remote state of files touched by such
+     * tasks may be older or newer than their local state, so it must be ignored, this is what isTouched is for.
+     * Ids that have been read must not be resolved to FileIds while a task is giving a file a new id, otherwise two
+     * FileIds may end up with the same id, this is what awaitIdAssignments is for. Only such tasks are waited for,
+     * other tasks, including uploads of content, never block reading.
+     */
+    public class Fence implements AutoCloseable {
+
+        // guarded by Uploader.this
+        private final Set<FileId> touched;
+        private final List<IdAssignment> idAssignments;
+
+        private Fence(Set<FileId> queued, Set<IdAssignment> idAssignments) {
+            this.touched = new HashSet<>(queued);
+            this.idAssignments = new ArrayList<>(idAssignments);
+        }
+
+        /**
+         * @return Whether a task for the file has been queued or has been running since the fence has been opened.
+         */
+        public boolean isTouched(FileId fileId) {
+            synchronized (Uploader.this) {
+                return touched.contains(fileId) || queues.containsKey(fileId);
+            }
+        }
+
+        /**
+         * Waits until all ids given to files since the fence has been opened are set.
+         */
+        public void awaitIdAssignments() throws InterruptedIOException {
+
+            List<IdAssignment> idAssignments;
+            synchronized (Uploader.this) {
+                idAssignments = new ArrayList<>(this.idAssignments);
+            }
+
+            for (IdAssignment idAssignment : idAssignments) {
+                try {
+                    idAssignment.done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for an id assignment");
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (Uploader.this) {
+                fences.remove(this);
+            }
+        }
+    }
+
+    public class IdAssignment implements AutoCloseable {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private IdAssignment() {
+        }
+
+        @Override
+        public void close() {
+            synchronized (Uploader.this) {
+                idAssignments.remove(this);
+            }
+            done.countDown();
+        }
+    }
+
     public class UploadStatus {
 
         public final Date date = new Date();
@@ -264,43 +341,37 @@ public class Uploader {
 
                 try {
 
-                    remoteStateLock.readLock().lock();
-
-                    try {
+                    FileId fileId = item.getTask().getFile().getId();
 
-                        OperationContext.restore(item.getCtx());
+                    touch(fileId);
 
-                        try {
+                    OperationContext.restore(item.getCtx());
 
-                            logger.debug("starting {} with etag {}", item.getTask(), queue.getEtag());
+                    try {
 
-                            etag = item.getTask().run(queue.getEtag());
+                        logger.debug("starting {} with etag {}", item.getTask(), queue.getEtag());
 
-                            logger.debug("completed {}, new etag is {}", item.getTask(), etag);
+                        etag = item.getTask().run(queue.getEtag());
 
-                        } finally {
-                            OperationContext.clear();
-                        }
+                        logger.debug("completed {}, new etag is {}", item.getTask(), etag);
 
-                        FileId fileId = item.getTask().getFile().getId();
+                    } finally {
+                        OperationContext.clear();
+                    }
 
-                        fileEtagUpdateEvent.onNext(new FileEtagUpdateEvent(fileId, etag));
+                    fileEtagUpdateEvent.onNext(new FileEtagUpdateEvent(fileId, etag));
 
-                        synchronized (Uploader.this) {
+                    synchronized (Uploader.this) {
 
-                            queue.setEtag(etag);
+                        queue.setEtag(etag);
 
-                            if (item.getQueue().removeHead())
-                                queues.remove(fileId);
+                        if (item.getQueue().removeHead())
+                            queues.remove(fileId);
 
-                            for (Item dependent : new HashSet<>(item.getDependents())) {
-                                if (dependent.removeDependency(item))
-                                    trySubmitToExecutor(dependent);
-                            }
+                        for (Item dependent : new HashSet<>(item.getDependents())) {
+                            if (dependent.removeDependency(item))
+                                trySubmitToExecutor(dependent);
                         }
-
-                    } finally {
-                        remoteStateLock.readLock().unlock();
                     }
 
                 } catch (ConflictException e) {
@@ -2,6 +2,7 @@ package jdbox;
 
 import com.google.inject.Module;
 import jdbox.content.ContentModule;
+import jdbox.content.pinned.PinningModule;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.DriveAdapterModule;
 import jdbox.driveadapter.File;
@@ -34,6 +35,7 @@ public class BaseFileSystemModuleTest extends BaseLifeCycleManagerTest {
             add(new LocalStateModule());
             add(new ContentModule());
             add(new FileTreeModule(true));
+            add(new PinningModule());
             add(new FileSystemModule());
         }};
     }
@@ -3,6 +3,7 @@ package jdbox;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Module;
 import jdbox.content.ContentModule;
+import jdbox.content.pinned.PinningModule;
 import jdbox.driveadapter.DriveAdapterModule;
 import jdbox.filetree.FileTreeModule;
 import jdbox.localstate.LocalStateModule;
@@ -138,6 +139,7 @@ public class FuzzyMountTest extends BaseTest {
             add(new LocalStateModule());
             add(new ContentModule());
             add(new FileTreeModule(true));
+            add(new PinningModule());
             add(new FileSystemModule());
         }};
     }
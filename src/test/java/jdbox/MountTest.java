@@ -1,8 +1,10 @@
 package jdbox;
 
+import jdbox.content.localstorage.LocalStorage;
 import jdbox.driveadapter.File;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -10,6 +12,7 @@ import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 
 import static jdbox.utils.TestUtils.getTestContent;
 import static jdbox.utils.TestUtils.getTestContentBytes;
@@ -111,4 +114,51 @@ public class MountTest extends BaseMountFileSystemTest {
         assertThat(Files.exists(sourcePath), is(false));
         assertThat(Files.exists(destinationPath), is(true));
     }
-}
\ No newline at end of file
+
+    @Test(timeout = 15000)
+    public void copy() throws InterruptedException, IOException {
+
+        lifeCycleManager.getInstance(LocalStorage.class).setConfig(
+                new LocalStorage.Config(LocalStorage.DurabilityPolicy.ASYNC, 5000, 60000, 32 * 1024 * 1024, 0));
+
+        File original = drive.createFile("test.txt", testFolder, getTestContent());
+
+        resetLocalState();
+
+        Path copyPath = mountPoint.resolve("test_2.txt");
+
+        Files.copy(mountPoint.resolve("test.txt"), copyPath);
+        lifeCycleManager.waitUntilUploaderIsDone();
+
+        List<File> children = drive.getChildren(testFolder);
+        assertThat(children.size(), equalTo(2));
+        for (File child : children)
+            assertThat(child.getMd5Sum(), equalTo(original.getMd5Sum()));
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+        assertThat(Files.readAllBytes(copyPath), equalTo(getTestContentBytes()));
+    }
+
+    @Test(timeout = 15000)
+    public void writeToExistingEmptyFileKeepsIt() throws InterruptedException, IOException {
+
+        lifeCycleManager.getInstance(LocalStorage.class).setConfig(
+                new LocalStorage.Config(LocalStorage.DurabilityPolicy.ASYNC, 5000, 60000, 32 * 1024 * 1024, 0));
+
+        drive.createFile("test.txt", testFolder, getTestContent());
+        File empty = drive.createFile("empty.txt", testFolder, new ByteArrayInputStream(new byte[0]));
+
+        resetLocalState();
+
+        assertThat(Files.readAllBytes(mountPoint.resolve("test.txt")), equalTo(getTestContentBytes()));
+
+        Files.write(mountPoint.resolve("empty.txt"), getTestContentBytes());
+        lifeCycleManager.waitUntilUploaderIsDone();
+
+        // the file existed before, so it is updated rather than substituted with a copy of test.txt
+        File updated = drive.getFile(empty);
+        assertThat(updated.getId(), equalTo(empty.getId()));
+        assertThat(updated.isTrashed(), is(false));
+        assertThat(updated.getSize(), equalTo((long) getTestContentBytes().length));
+    }
+}
@@ -5,6 +5,7 @@ import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.inject.Module;
 import jdbox.content.ContentModule;
 import jdbox.content.OpenedFiles;
+import jdbox.content.pinned.PinningModule;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.File;
 import jdbox.filetree.FileTree;
@@ -47,6 +48,7 @@ public class UploadFailureTest extends BaseMountFileSystemTest {
             add(new UploaderModule());
             add(new ContentModule());
             add(new FileTreeModule(true));
+            add(new PinningModule());
             add(new FileSystemModule());
         }};
     }
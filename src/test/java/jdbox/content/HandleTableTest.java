@@ -0,0 +1,70 @@
+package jdbox.content;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+@Category(OpenedFiles.class)
+public class HandleTableTest {
+
+    private final HandleTable<String> table = new HandleTable<>();
+
+    @Test
+    public void staleHandleIsRejected() {
+
+        long first = add("first");
+        assertThat(table.remove(first), equalTo("first"));
+        assertThat(table.remove(first), nullValue());
+
+        long second = add("second");
+
+        assertThat((int) second, equalTo((int) first));
+        assertThat(second, not(equalTo(first)));
+        assertThat(table.get(first), nullValue());
+        assertThat(table.get(second), equalTo("second"));
+        assertThat(table.size(), equalTo(1));
+    }
+
+    @Test
+    public void unknownHandle() {
+        assertThat(table.get(0), nullValue());
+        assertThat(table.get(-1), nullValue());
+        assertThat(table.get(Long.MAX_VALUE), nullValue());
+    }
+
+    @Test
+    public void grow() {
+
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            handles.add(add(Integer.toString(i)));
+
+        Set<Long> unique = new HashSet<>(handles);
+        assertThat(unique.size(), equalTo(1000));
+
+        for (int i = 0; i < 1000; i++)
+            assertThat(table.get(handles.get(i)), equalTo(Integer.toString(i)));
+
+        for (int i = 0; i < 1000; i += 2)
+            table.remove(handles.get(i));
+
+        assertThat(table.size(), equalTo(500));
+        assertThat(table.get(handles.get(0)), nullValue());
+        assertThat(table.get(handles.get(1)), equalTo("1"));
+    }
+
+    private long add(String value) {
+        long handle = table.reserve();
+        table.set(handle, value);
+        return handle;
+    }
+}
@@ -0,0 +1,146 @@
+package jdbox.content;
+
+import com.google.inject.Key;
+import com.google.inject.Module;
+import jdbox.content.bytestores.ByteStore;
+import jdbox.content.localstorage.LocalStorage;
+import jdbox.driveadapter.DriveAdapter;
+import jdbox.filetree.RemoteFileChangeEvent;
+import jdbox.localstate.LocalStateModule;
+import jdbox.models.File;
+import jdbox.uploader.UploaderModule;
+import jdbox.utils.OrderedRule;
+import jdbox.utils.TestFileProvider;
+import jdbox.utils.driveadapter.MockDriveAdapterModule;
+import jdbox.utils.driveadapter.Unsafe;
+import jdbox.utils.driveadapter.UnsafeDriveAdapterModule;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import rx.Observer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Category(OpenedFiles.class)
+public class OpenedFilesRefreshTest extends BaseOpenedFilesTest {
+
+    @OrderedRule
+    public final TestFileProvider testFileProvider = new TestFileProvider(lifeCycleManager, testFolderProvider, 11);
+
+    private LocalStorage localStorage;
+    private DriveAdapter drive;
+    private Observer<RemoteFileChangeEvent> remoteFileChangeEvent;
+
+    @Override
+    protected List<Module> getRequiredModules() {
+        return new ArrayList<Module>() {{
+            add(new MockDriveAdapterModule(driveServiceProvider.getDriveService()));
+            add(new UnsafeDriveAdapterModule());
+            add(new UploaderModule());
+            add(new LocalStateModule());
+            add(new TestContentModule());
+        }};
+    }
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        localStorage = lifeCycleManager.getInstance(LocalStorage.class);
+        drive = lifeCycleManager.getInstance(DriveAdapter.class);
+        remoteFileChangeEvent = lifeCycleManager.getInstance(new Key<Observer<RemoteFileChangeEvent>>() {});
+    }
+
+    @Test(timeout = 15000)
+    public void hotFileIsRefreshed() throws InterruptedException, IOException {
+
+        File file = testFileProvider.getFile();
+
+        assertContent(file, testFileProvider.getContent());
+        assertContent(file, testFileProvider.getContent());
+
+        byte[] content = createContent();
+        File changed = updateRemotely(file, content);
+
+        remoteFileChangeEvent.onNext(new RemoteFileChangeEvent(file.getId(), changed));
+
+        while (localStorage.getRefreshCount() == 0)
+            Thread.sleep(100);
+
+        assertThat(localStorage.getRefreshCount(), equalTo(1L));
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(1));
+
+        assertContent(changed, content);
+
+        // only the first open has downloaded the content
+        verify(drive, times(1)).downloadFileRangeAsync(
+                (jdbox.driveadapter.File) notNull(), anyLong(), anyLong(), (Executor) notNull());
+    }
+
+    @Test
+    public void coldFileIsNotRefreshed() throws InterruptedException, IOException {
+
+        File file = testFileProvider.getFile();
+
+        assertContent(file, testFileProvider.getContent());
+
+        File changed = updateRemotely(file, createContent());
+
+        ThreadPoolExecutor lowPriorityExecutor =
+                (ThreadPoolExecutor) lifeCycleManager.getInstance(Executor.class, LowPriority.class);
+        long tasks = lowPriorityExecutor.getTaskCount();
+
+        remoteFileChangeEvent.onNext(new RemoteFileChangeEvent(file.getId(), changed));
+
+        assertThat(lowPriorityExecutor.getTaskCount(), equalTo(tasks));
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(0));
+        assertThat(localStorage.getRefreshCount(), equalTo(0L));
+    }
+
+    private byte[] createContent() {
+
+        byte[] content = new byte[testFileProvider.getContent().length];
+        new Random().nextBytes(content);
+
+        return content;
+    }
+
+    private File updateRemotely(File file, byte[] content) throws IOException {
+
+        InputStream stream = new ByteArrayInputStream(content);
+        File changed = new File(
+                fileIdStore,
+                lifeCycleManager.getInstance(DriveAdapter.class, Unsafe.class).updateFileContent(
+                        file.toDaFile(), stream));
+
+        assertThat(changed.getMd5Sum(), not(equalTo(file.getMd5Sum())));
+
+        return changed;
+    }
+
+    private void assertContent(File file, byte[] content) throws IOException, InterruptedException {
+
+        try (ByteStore openedFile = openedFiles.open(file, OpenedFiles.OpenMode.READ_ONLY)) {
+            ByteBuffer buffer = ByteBuffer.allocate(content.length);
+            assertThat(openedFile.read(buffer, 0, content.length), equalTo(content.length));
+            assertThat(buffer.array(), equalTo(content));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+    }
+}
@@ -0,0 +1,103 @@
+package jdbox.content;
+
+import jdbox.content.bytestores.ByteStore;
+import jdbox.content.localstorage.LocalStorage;
+import jdbox.driveadapter.DriveAdapter;
+import jdbox.models.File;
+import jdbox.utils.OrderedRule;
+import jdbox.utils.TestFileProvider;
+import jdbox.utils.TestUtils;
+import jdbox.utils.driveadapter.Unsafe;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class OpenedFilesRetainTest extends BaseOpenedFilesTest {
+
+    @OrderedRule
+    public final TestFileProvider testFileProvider = new TestFileProvider(lifeCycleManager, testFolderProvider, 11);
+
+    private LocalStorage localStorage;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        localStorage = lifeCycleManager.getInstance(LocalStorage.class);
+    }
+
+    @Test
+    public void reopen() throws InterruptedException, IOException {
+
+        File file = testFileProvider.getFile();
+
+        assertContent(file);
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(1));
+
+        try (ByteStore ignored = openedFiles.open(file, OpenedFiles.OpenMode.READ_ONLY)) {
+            assertThat(localStorage.getRetainedFilesCount(), equalTo(0));
+            assertThat(localStorage.getFilesCount(), equalTo(1));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(1));
+    }
+
+    @Test
+    public void outdatedContentIsDiscarded() throws InterruptedException, IOException {
+
+        File file = testFileProvider.getFile();
+
+        assertContent(file);
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(1));
+
+        File outdated = file.clone();
+        outdated.setMd5Sum("outdated");
+
+        try (ByteStore ignored = openedFiles.open(outdated, OpenedFiles.OpenMode.READ_ONLY)) {
+            assertThat(localStorage.getRetainedFilesCount(), equalTo(0));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+    }
+
+    @Test
+    public void duplicate() throws InterruptedException, IOException {
+
+        File file = testFileProvider.getFile();
+
+        File duplicate = new File(
+                fileIdStore,
+                lifeCycleManager.getInstance(DriveAdapter.class, Unsafe.class).createFile(
+                        TestUtils.testFileName + " copy", testFolderProvider.getTestFolder(),
+                        new ByteArrayInputStream(testFileProvider.getContent())));
+
+        assertThat(duplicate.getMd5Sum(), equalTo(file.getMd5Sum()));
+
+        assertContent(file);
+
+        assertContent(duplicate);
+        assertThat(localStorage.getRetainedFilesCount(), equalTo(2));
+    }
+
+    private void assertContent(File file) throws IOException, InterruptedException {
+
+        byte[] content = testFileProvider.getContent();
+
+        try (ByteStore openedFile = openedFiles.open(file, OpenedFiles.OpenMode.READ_ONLY)) {
+            ByteBuffer buffer = ByteBuffer.allocate(content.length);
+            assertThat(openedFile.read(buffer, 0, content.length), equalTo(content.length));
+            assertThat(buffer.array(), equalTo(content));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+    }
+}
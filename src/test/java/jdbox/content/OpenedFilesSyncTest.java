@@ -0,0 +1,86 @@
+package jdbox.content;
+
+import jdbox.content.localstorage.LocalStorage;
+import jdbox.models.File;
+import jdbox.uploader.Uploader;
+import jdbox.utils.OrderedRule;
+import jdbox.utils.TestFileProvider;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class OpenedFilesSyncTest extends BaseOpenedFilesTest {
+
+    private final byte[] bytes = "pysh-pysh-ololo".getBytes();
+
+    @OrderedRule
+    public final TestFileProvider testFileProvider = new TestFileProvider(lifeCycleManager, testFolderProvider, 11);
+
+    @Test
+    public void uploadOnFsync() throws InterruptedException, IOException {
+
+        lifeCycleManager.getInstance(LocalStorage.class).setConfig(
+                new LocalStorage.Config(LocalStorage.DurabilityPolicy.UPLOAD_ON_FSYNC, 5000, 60000));
+
+        File file = testFileProvider.getFile();
+
+        try (OpenedFile openedFile =
+                     openedFiles.open(file, OpenedFiles.OpenMode.READ_WRITE)) {
+
+            openedFile.write(ByteBuffer.wrap(bytes), 0, bytes.length);
+            openedFile.sync();
+
+            assertThat(lifeCycleManager.getInstance(Uploader.class).getQueueCount(), equalTo(0));
+            assertThat(lifeCycleManager.getInstance(LocalStorage.class).getFilesCount(), equalTo(1));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+
+        assertContent(file);
+    }
+
+    @Test
+    public void debounced() throws InterruptedException, IOException {
+
+        lifeCycleManager.getInstance(LocalStorage.class).setConfig(
+                new LocalStorage.Config(LocalStorage.DurabilityPolicy.DEBOUNCED, 100, 60000));
+
+        File file = testFileProvider.getFile();
+
+        try (OpenedFile openedFile =
+                     openedFiles.open(file, OpenedFiles.OpenMode.READ_WRITE)) {
+
+            openedFile.write(ByteBuffer.wrap(bytes), 0, bytes.length);
+            openedFile.flush();
+
+            Thread.sleep(500);
+            lifeCycleManager.waitUntilUploaderIsDone();
+
+            assertThat(lifeCycleManager.getInstance(LocalStorage.class).getFilesCount(), equalTo(1));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+
+        assertContent(file);
+    }
+
+    private void assertContent(File file) throws IOException, InterruptedException {
+
+        try (OpenedFile openedFile =
+                     openedFiles.open(file, OpenedFiles.OpenMode.READ_ONLY)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+
+            assertThat(openedFile.read(buffer, 0, bytes.length), equalTo(bytes.length));
+            assertThat(buffer.array(), equalTo(bytes));
+        }
+
+        lifeCycleManager.waitUntilLocalStorageIsEmpty();
+    }
+}
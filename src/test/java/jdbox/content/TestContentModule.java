@@ -1,6 +1,13 @@
 package jdbox.content;
 
 import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import jdbox.content.localstorage.LocalStorage;
+import jdbox.filetree.RemoteFileChangeEvent;
+import rx.Observable;
+import rx.Observer;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -10,8 +17,22 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 public class TestContentModule extends ContentModule {
 
+    @Override
+    protected void configure() {
+
+        super.configure();
+
+        Subject<RemoteFileChangeEvent, RemoteFileChangeEvent> remoteFileChangeEvent = PublishSubject.create();
+        bind(new TypeLiteral<Observable<RemoteFileChangeEvent>>() {}).toInstance(remoteFileChangeEvent);
+        bind(new TypeLiteral<Observer<RemoteFileChangeEvent>>() {}).toInstance(remoteFileChangeEvent);
+    }
+
     @Override
     public void tearDown(Injector injector) throws InterruptedException {
+        unregisterMemoryPressureListeners(injector);
+        injector.getInstance(LocalStorage.class).tearDown();
+        scheduler.shutdownNow();
+        lowPriorityExecutor.shutdownNow();
         List<Runnable> tasks = executor.shutdownNow();
         assertThat(tasks.size(), equalTo(0));
         executor.awaitTermination(5, TimeUnit.SECONDS);
@@ -32,10 +32,12 @@ public class ByteSourcesCopyTest {
         byte[] expected = "pysh-pysh-ololo".getBytes();
         byte[] actual = new byte[expected.length];
 
-        ByteStore source = new InMemoryByteStore(1024);
+        SlabPool pool = new SlabPool(new SlabPool.Config());
+
+        ByteStore source = new InMemoryByteStore(pool, 1024);
         source.write(ByteBuffer.wrap(expected), 0, expected.length);
 
-        ByteStore destination = new InMemoryByteStore(1024);
+        ByteStore destination = new InMemoryByteStore(pool, 1024);
         ByteSources.copy(source, destination, length);
 
         destination.read(ByteBuffer.wrap(actual), 0, actual.length);
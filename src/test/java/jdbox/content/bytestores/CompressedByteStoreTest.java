@@ -0,0 +1,97 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@Category(OpenedFiles.class)
+public class CompressedByteStoreTest {
+
+    private final static int chunkSize = 1024;
+    private final static int size = 64 * chunkSize;
+
+    @Test
+    public void textIsCompressed() throws IOException {
+
+        byte[] content = new byte[size];
+        byte[] line = "2015-06-01 12:00:00 INFO jdbox.uploader.Uploader - pysh-pysh-ololo\n".getBytes();
+        for (int i = 0; i < size; i++)
+            content[i] = line[i % line.length];
+
+        try (CompressedByteStore store = new CompressedByteStore(chunkSize, 2)) {
+
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+
+            assertThat(store.getResidentSize(), lessThan((long) size / 3));
+            assertThat(readAll(store), equalTo(content));
+        }
+    }
+
+    @Test
+    public void incompressibleIsStoredRaw() throws IOException {
+
+        byte[] content = new byte[size];
+        new Random(0).nextBytes(content);
+
+        try (CompressedByteStore store = new CompressedByteStore(chunkSize, 2)) {
+
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+
+            assertThat(store.getResidentSize(), equalTo((long) size));
+            assertThat(readAll(store), equalTo(content));
+        }
+    }
+
+    @Test
+    public void randomAccess() throws IOException {
+
+        Random random = new Random(0);
+        byte[] expected = new byte[0];
+
+        try (CompressedByteStore store = new CompressedByteStore(chunkSize, 2)) {
+
+            for (int i = 0; i < 1000; i++) {
+
+                int offset = random.nextInt(size);
+                int length = random.nextInt(3 * chunkSize);
+
+                if (random.nextInt(10) == 0) {
+                    store.truncate(offset);
+                    expected = Arrays.copyOf(expected, offset);
+                    continue;
+                }
+
+                byte[] data = new byte[length];
+                if (random.nextBoolean())
+                    random.nextBytes(data);
+                else
+                    Arrays.fill(data, (byte) random.nextInt());
+
+                store.write(ByteBuffer.wrap(data), offset, length);
+
+                if (expected.length < offset + length)
+                    expected = Arrays.copyOf(expected, offset + length);
+                System.arraycopy(data, 0, expected, offset, length);
+
+                assertThat(store.getSize(), equalTo((long) expected.length));
+            }
+
+            assertThat(readAll(store), equalTo(expected));
+        }
+    }
+
+    private static byte[] readAll(ByteStore store) throws IOException {
+        byte[] actual = new byte[(int) store.getSize()];
+        assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+        return actual;
+    }
+}
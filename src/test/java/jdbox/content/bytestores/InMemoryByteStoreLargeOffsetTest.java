@@ -0,0 +1,91 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class InMemoryByteStoreLargeOffsetTest {
+
+    private final static long boundary = 4L * 1024 * 1024 * 1024;
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+
+    private SlabPool pool;
+    private InMemoryByteStore store;
+
+    @Before
+    public void setUp() {
+        pool = new SlabPool(new SlabPool.Config());
+        store = new InMemoryByteStore(pool, 16 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+    }
+
+    @Test
+    public void writeAndReadAcrossBoundary() throws IOException {
+
+        long offset = boundary - 5;
+
+        assertThat(store.write(ByteBuffer.wrap(content), offset, content.length), equalTo(content.length));
+
+        assertThat(store.getSize(), equalTo(offset + content.length));
+        assertThat(store.getBufferCount(), equalTo(2));
+
+        byte[] actual = new byte[content.length];
+        assertThat(store.read(ByteBuffer.wrap(actual), offset, actual.length), equalTo(actual.length));
+        assertThat(actual, equalTo(content));
+
+        assertThat(store.read(ByteBuffer.wrap(actual), offset + content.length, actual.length), equalTo(0));
+    }
+
+    @Test
+    public void truncateAcrossBoundary() throws IOException {
+
+        store.truncate(boundary + 1024);
+        store.write(ByteBuffer.wrap(content), boundary, content.length);
+
+        store.truncate(boundary + 5);
+        assertThat(store.getSize(), equalTo(boundary + 5));
+
+        store.truncate(boundary + content.length);
+
+        byte[] expected = new byte[content.length];
+        System.arraycopy(content, 0, expected, 0, 5);
+
+        byte[] actual = new byte[content.length];
+        assertThat(store.read(ByteBuffer.wrap(actual), boundary, actual.length), equalTo(actual.length));
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    public void inputStreamBeyondBoundary() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), boundary + 1, content.length);
+
+        try (InputStream stream = ByteSources.toInputStream(store)) {
+
+            assertThat(stream.skip(boundary), equalTo(boundary));
+            assertThat(stream.read(), equalTo(0));
+
+            byte[] actual = new byte[content.length];
+            assertThat(stream.read(actual, 0, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(content));
+
+            assertThat(stream.read(), equalTo(-1));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class InMemoryByteStoreSparseTest {
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+
+    private SlabPool pool;
+    private InMemoryByteStore store;
+
+    @Before
+    public void setUp() {
+        pool = new SlabPool(new SlabPool.Config());
+        store = new InMemoryByteStore(pool, 16);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+    }
+
+    @Test
+    public void truncateDoesNotAllocate() throws IOException {
+
+        store.truncate(1024 * 1024 * 1024);
+
+        assertThat(store.getSize(), equalTo((long) 1024 * 1024 * 1024));
+        assertThat(store.getResidentSize(), equalTo((long) 0));
+
+        byte[] actual = new byte[content.length];
+        assertThat(store.read(ByteBuffer.wrap(actual), 512 * 1024 * 1024, actual.length), equalTo(actual.length));
+        assertThat(actual, equalTo(new byte[content.length]));
+    }
+
+    @Test
+    public void writeBeyondEnd() throws IOException {
+
+        int offset = 1000;
+
+        store.write(ByteBuffer.wrap(content), offset, content.length);
+
+        assertThat(store.getSize(), equalTo((long) offset + content.length));
+        assertThat(store.getBufferCount(), equalTo(2));
+
+        byte[] expected = new byte[offset + content.length];
+        System.arraycopy(content, 0, expected, offset, content.length);
+
+        byte[] actual = new byte[expected.length];
+        assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    public void copyPreservesHoles() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), 1000, content.length);
+        store.truncate(4000);
+
+        try (InMemoryByteStore copy = new InMemoryByteStore(pool, 16)) {
+
+            assertThat(ByteSources.copy(store, copy, 16), equalTo((long) 4000));
+
+            assertThat(copy.getSize(), equalTo((long) 4000));
+            assertThat(copy.getBufferCount(), equalTo(2));
+
+            byte[] actual = new byte[content.length];
+            assertThat(copy.read(ByteBuffer.wrap(actual), 1000, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(content));
+        }
+    }
+
+    @Test
+    public void shrinkThenGrow() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), 0, content.length);
+
+        store.truncate(5);
+        store.truncate(content.length);
+
+        byte[] expected = new byte[content.length];
+        System.arraycopy(content, 0, expected, 0, 5);
+
+        byte[] actual = new byte[content.length];
+        assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+        assertThat(actual, equalTo(expected));
+    }
+}
@@ -55,7 +55,7 @@ public class InMemoryByteStoreTest extends BaseContentModuleTest {
         byte[] expectedFull = "pysh-pysh-ololo".getBytes();
         byte[] actualFull = new byte[expectedFull.length];
 
-        try (InMemoryByteStore store = factory.create()) {
+        try (InMemoryByteStore store = (InMemoryByteStore) factory.createResident()) {
 
             assertThat(store.getBufferCount(), equalTo(0));
 
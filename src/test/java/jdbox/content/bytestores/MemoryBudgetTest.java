@@ -0,0 +1,95 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+@Category(OpenedFiles.class)
+public class MemoryBudgetTest {
+
+    private final static int bufferSize = 1024;
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+
+    private SlabPool pool;
+    private MemoryBudget budget;
+    private InMemoryByteStoreFactory factory;
+
+    @Before
+    public void setUp() {
+        pool = new SlabPool(new SlabPool.Config());
+        budget = new MemoryBudget(new MemoryBudget.Config(3 * bufferSize, null));
+        factory = new InMemoryByteStoreFactory(pool, budget, new InMemoryByteStoreFactory.Config(bufferSize));
+    }
+
+    @Test
+    public void coldestStoresAreSpilled() throws IOException {
+
+        List<ByteStore> stores = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            ByteStore store = factory.create();
+            store.write(ByteBuffer.wrap(content), i * bufferSize, content.length);
+            stores.add(store);
+            assertThat(budget.getResidentSize(), lessThanOrEqualTo((long) 3 * bufferSize));
+        }
+
+        assertThat(budget.getSpills(), equalTo((long) 2));
+        assertThat(((SpillableByteStore) stores.get(0)).isSpilled(), equalTo(true));
+        assertThat(((SpillableByteStore) stores.get(4)).isSpilled(), equalTo(false));
+
+        for (int i = 0; i < 5; i++) {
+
+            ByteStore store = stores.get(i);
+
+            byte[] expected = new byte[i * bufferSize + content.length];
+            System.arraycopy(content, 0, expected, i * bufferSize, content.length);
+
+            byte[] actual = new byte[expected.length];
+            assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(expected));
+        }
+
+        for (ByteStore store : stores)
+            store.close();
+
+        assertThat(budget.getResidentSize(), equalTo((long) 0));
+        assertThat(budget.getStoreCount(), equalTo(0));
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+    }
+
+    @Test
+    public void spilledStoreIsWritable() throws IOException {
+
+        try (ByteStore store = factory.create()) {
+
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+
+            assertThat(((SpillableByteStore) store).spill(), equalTo((long) bufferSize));
+
+            store.write(ByteBuffer.wrap(content), 2 * content.length, content.length);
+            store.truncate(2 * content.length + 5);
+            store.truncate(4 * content.length);
+
+            byte[] expected = new byte[4 * content.length];
+            System.arraycopy(content, 0, expected, 0, content.length);
+            System.arraycopy(content, 0, expected, 2 * content.length, 5);
+
+            byte[] actual = new byte[expected.length];
+            assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(expected));
+
+            assertThat(store.read(ByteBuffer.wrap(actual), expected.length, actual.length), equalTo(0));
+        }
+    }
+}
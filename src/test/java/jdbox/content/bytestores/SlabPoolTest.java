@@ -0,0 +1,89 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class SlabPoolTest {
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+
+    private SlabPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new SlabPool(new SlabPool.Config(2));
+    }
+
+    @Test
+    public void reuse() throws IOException {
+
+        try (InMemoryByteStore store = new InMemoryByteStore(pool, 4)) {
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+            assertThat(pool.getOutstanding(), equalTo((long) 4));
+        }
+
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+        assertThat(pool.getPooled(), equalTo(2));
+        assertThat(pool.getMisses(), equalTo((long) 4));
+
+        try (InMemoryByteStore store = new InMemoryByteStore(pool, 4)) {
+
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+
+            assertThat(pool.getHits(), equalTo((long) 2));
+            assertThat(pool.getMisses(), equalTo((long) 6));
+
+            byte[] actual = new byte[content.length];
+            assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(content.length));
+            assertThat(actual, equalTo(content));
+        }
+    }
+
+    @Test
+    public void drain() throws IOException {
+
+        try (InMemoryByteStore store = new InMemoryByteStore(pool, 4)) {
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+        }
+
+        assertThat(pool.getPooled(), equalTo(2));
+        assertThat(pool.drain(), equalTo((long) 2 * 4));
+        assertThat(pool.getPooled(), equalTo(0));
+    }
+
+    @Test
+    public void truncate() throws IOException {
+
+        try (InMemoryByteStore store = new InMemoryByteStore(pool, 4)) {
+
+            store.write(ByteBuffer.wrap(content), 0, content.length);
+
+            store.truncate(5);
+            assertThat(store.getBufferCount(), equalTo(2));
+            assertThat(pool.getOutstanding(), equalTo((long) 2));
+            assertThat(pool.getPooled(), equalTo(2));
+
+            store.truncate(10);
+            assertThat(store.getBufferCount(), equalTo(2));
+            assertThat(pool.getHits(), equalTo((long) 0));
+
+            byte[] expected = new byte[10];
+            System.arraycopy(content, 0, expected, 0, 5);
+
+            byte[] actual = new byte[10];
+            assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(expected));
+        }
+
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+    }
+}
@@ -0,0 +1,149 @@
+package jdbox.content.bytestores;
+
+import jdbox.content.OpenedFiles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(OpenedFiles.class)
+public class WriteGatheringByteStoreTest {
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+
+    private SlabPool pool;
+    private CountingByteStore counting;
+    private WriteGatheringByteStore store;
+
+    @Before
+    public void setUp() {
+        pool = new SlabPool(new SlabPool.Config());
+        counting = new CountingByteStore(new InMemoryByteStore(pool, 16));
+        store = new WriteGatheringByteStore(counting, 64);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        assertThat(pool.getOutstanding(), equalTo((long) 0));
+    }
+
+    @Test
+    public void contiguousWritesAreGathered() throws IOException {
+
+        for (int i = 0; i < 4; i++)
+            store.write(ByteBuffer.wrap(content), i * content.length, content.length);
+
+        assertThat(counting.writes, equalTo(0));
+        assertThat(store.getSize(), equalTo((long) 4 * content.length));
+
+        store.write(ByteBuffer.wrap(content), 4 * content.length, content.length);
+
+        assertThat(counting.writes, equalTo(1));
+        assertThat(counting.getSize(), equalTo((long) 4 * content.length));
+
+        store.flush();
+
+        assertThat(counting.writes, equalTo(2));
+        assertThat(counting.getSize(), equalTo((long) 5 * content.length));
+    }
+
+    @Test
+    public void nonContiguousWriteFlushes() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), 0, content.length);
+        store.write(ByteBuffer.wrap(content), 100, content.length);
+
+        assertThat(counting.writes, equalTo(1));
+
+        byte[] expected = new byte[100 + content.length];
+        System.arraycopy(content, 0, expected, 0, content.length);
+        System.arraycopy(content, 0, expected, 100, content.length);
+
+        assertThat(read(0, expected.length), equalTo(expected));
+        assertThat(counting.writes, equalTo(2));
+    }
+
+    @Test
+    public void readOfCleanRegionDoesNotFlush() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), 0, content.length);
+        store.flush();
+
+        store.write(ByteBuffer.wrap(content), content.length, content.length);
+
+        assertThat(read(0, content.length), equalTo(content));
+        assertThat(counting.writes, equalTo(1));
+
+        assertThat(read(content.length, 5), equalTo("pysh-".getBytes()));
+        assertThat(counting.writes, equalTo(2));
+    }
+
+    @Test
+    public void truncateFlushes() throws IOException {
+
+        store.write(ByteBuffer.wrap(content), 0, content.length);
+        store.truncate(4);
+
+        assertThat(store.getSize(), equalTo((long) 4));
+        assertThat(read(0, 4), equalTo("pysh".getBytes()));
+    }
+
+    @Test
+    public void largeWriteBypassesBuffer() throws IOException {
+
+        byte[] large = new byte[100];
+        store.write(ByteBuffer.wrap(large), 0, large.length);
+
+        assertThat(counting.writes, equalTo(1));
+        assertThat(counting.getSize(), equalTo((long) large.length));
+    }
+
+    private byte[] read(long offset, int count) throws IOException {
+        byte[] actual = new byte[count];
+        assertThat(store.read(ByteBuffer.wrap(actual), offset, count), equalTo(count));
+        return actual;
+    }
+
+    private static class CountingByteStore implements ByteStore {
+
+        private final ByteStore store;
+        public int writes = 0;
+
+        CountingByteStore(ByteStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, long offset, int count) throws IOException {
+            return store.read(buffer, offset, count);
+        }
+
+        @Override
+        public int write(ByteBuffer buffer, long offset, int count) throws IOException {
+            writes++;
+            return store.write(buffer, offset, count);
+        }
+
+        @Override
+        public void truncate(long offset) throws IOException {
+            store.truncate(offset);
+        }
+
+        @Override
+        public long getSize() {
+            return store.getSize();
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+}
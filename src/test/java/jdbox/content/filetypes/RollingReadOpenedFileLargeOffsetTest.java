@@ -0,0 +1,59 @@
+package jdbox.content.filetypes;
+
+import jdbox.content.OpenedFiles;
+import jdbox.content.bytestores.ByteSource;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category({RollingReadOpenedFileFactory.class, OpenedFiles.class})
+public class RollingReadOpenedFileLargeOffsetTest {
+
+    private final static long size = 5L * 1024 * 1024 * 1024;
+
+    @Test
+    public void readBeyondBoundary() throws IOException {
+
+        try (RollingReadOpenedFile file = new RollingReadOpenedFile(size, 1024, 4096, new GeneratingReaderFactory())) {
+            for (long offset : new long[]{(1L << 31) - 10, (1L << 32) - 10, size - 100}) {
+                ByteBuffer buffer = ByteBuffer.allocate(100);
+                assertThat(file.read(buffer, offset, 100), equalTo(100));
+                for (int i = 0; i < 100; i++)
+                    assertThat(buffer.get(i), equalTo(valueAt(offset + i)));
+            }
+        }
+    }
+
+    private static byte valueAt(long offset) {
+        return (byte) (offset % 251);
+    }
+
+    private static class GeneratingReaderFactory implements RollingReadOpenedFile.ReaderFactory {
+
+        @Override
+        public ByteSource create(final long offset, final int length) {
+
+            assertThat(length > 0, equalTo(true));
+
+            return new ByteSource() {
+
+                @Override
+                public int read(ByteBuffer buffer, long pageOffset, int count) {
+                    count = (int) Math.min(count, length - pageOffset);
+                    for (int i = 0; i < count; i++)
+                        buffer.put(valueAt(offset + pageOffset + i));
+                    return count;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package jdbox.content.localstorage;
+
+import jdbox.content.OpenedFiles;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@Category(OpenedFiles.class)
+public class FrequencySketchTest {
+
+    private final FrequencySketch sketch = new FrequencySketch(16);
+
+    @Test
+    public void counting() {
+
+        for (int i = 0; i < 5; i++)
+            sketch.increment(42);
+
+        assertThat(sketch.frequency(42), equalTo(5));
+    }
+
+    @Test
+    public void saturation() {
+
+        for (int i = 0; i < 20; i++)
+            sketch.increment(42);
+
+        assertThat(sketch.frequency(42), equalTo(15));
+    }
+
+    @Test
+    public void aging() {
+
+        for (int i = 0; i < 10; i++)
+            sketch.increment(42);
+
+        for (int i = 0; i < 16 * 10; i++)
+            sketch.increment(1000 + i);
+
+        assertThat(sketch.frequency(42), lessThan(10));
+    }
+}
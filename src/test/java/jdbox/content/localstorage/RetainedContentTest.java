@@ -0,0 +1,89 @@
+package jdbox.content.localstorage;
+
+import jdbox.content.OpenedFiles;
+import jdbox.models.fileids.FileId;
+import jdbox.models.fileids.FileIdStore;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+@Category(OpenedFiles.class)
+public class RetainedContentTest {
+
+    private final FileIdStore fileIdStore = new FileIdStore();
+    private final RetainedContent retained = new RetainedContent();
+
+    @Test
+    public void eviction() {
+
+        FileId a = fileIdStore.get("a");
+        FileId b = fileIdStore.get("b");
+        FileId c = fileIdStore.get("c");
+
+        assertThat(retained.put(new RetainedContent.Entry(a, "md5 a", null, 10), 20).size(), equalTo(0));
+        assertThat(retained.put(new RetainedContent.Entry(b, "md5 b", null, 10), 20).size(), equalTo(0));
+
+        retained.peek(a);
+
+        List<RetainedContent.Entry> evicted = retained.put(new RetainedContent.Entry(c, "md5 c", null, 10), 20);
+
+        assertThat(evicted.size(), equalTo(1));
+        assertThat(evicted.get(0).fileId, equalTo(b));
+        assertThat(retained.getSize(), equalTo((long) 20));
+        assertThat(retained.get("md5 b"), nullValue());
+    }
+
+    @Test
+    public void md5Index() {
+
+        FileId a = fileIdStore.get("a");
+        FileId b = fileIdStore.get("b");
+
+        retained.put(new RetainedContent.Entry(a, "md5", null, 10), 100);
+        retained.put(new RetainedContent.Entry(b, "other md5", null, 10), 100);
+
+        assertThat(retained.get("md5").fileId, equalTo(a));
+
+        retained.remove(a);
+
+        assertThat(retained.get("md5"), nullValue());
+        assertThat(retained.get("other md5").fileId, equalTo(b));
+        assertThat(retained.getCount(), equalTo(1));
+        assertThat(retained.getSize(), equalTo((long) 10));
+    }
+
+    @Test
+    public void scanDoesNotEvictWorkingSet() {
+
+        FileId a = fileIdStore.get("a");
+        FileId b = fileIdStore.get("b");
+
+        for (FileId fileId : new FileId[]{a, b}) {
+            for (int i = 0; i < 3; i++)
+                assertThat(retained.acquire(fileId), nullValue());
+            retained.put(new RetainedContent.Entry(fileId, "md5 " + fileId, null, 10), 20);
+        }
+
+        for (int i = 0; i < 10; i++) {
+
+            FileId scanned = fileIdStore.get("scanned " + i);
+            assertThat(retained.acquire(scanned), nullValue());
+
+            List<RetainedContent.Entry> evicted =
+                    retained.put(new RetainedContent.Entry(scanned, "md5 " + i, null, 10), 20);
+
+            assertThat(evicted.size(), equalTo(1));
+            assertThat(evicted.get(0).fileId, equalTo(scanned));
+        }
+
+        assertThat(retained.getRejections(), equalTo((long) 10));
+        assertThat(retained.acquire(a).fileId, equalTo(a));
+        assertThat(retained.acquire(b).fileId, equalTo(b));
+        assertThat(retained.getHitRatio(), equalTo(2.0 / 18));
+    }
+}
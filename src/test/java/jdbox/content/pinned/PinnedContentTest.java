@@ -0,0 +1,77 @@
+package jdbox.content.pinned;
+
+import jdbox.content.OpenedFiles;
+import jdbox.content.bytestores.ByteStore;
+import jdbox.utils.TempFolderProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+@Category(OpenedFiles.class)
+public class PinnedContentTest {
+
+    private final byte[] content = "pysh-pysh-ololo".getBytes();
+    private final String md5 = "cc984c2abff161b2a7e6c97fcc29c380";
+
+    @Rule
+    public final TempFolderProvider tempFolderProvider = new TempFolderProvider();
+
+    private PinnedContent pinnedContent;
+
+    @Before
+    public void setUp() {
+        pinnedContent = new PinnedContent(new PinnedContent.Config(tempFolderProvider.create().toFile()));
+    }
+
+    @Test
+    public void putAndOpen() throws IOException {
+
+        pinnedContent.put(md5, new ByteArrayInputStream(content));
+
+        assertThat(pinnedContent.contains(md5), equalTo(true));
+        assertThat(pinnedContent.getCount(), equalTo(1));
+
+        try (ByteStore store = pinnedContent.open(md5)) {
+            byte[] actual = new byte[content.length];
+            assertThat(store.getSize(), equalTo((long) content.length));
+            assertThat(store.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(content.length));
+            assertThat(actual, equalTo(content));
+        }
+    }
+
+    @Test
+    public void mismatchingContentIsNotKept() throws IOException {
+
+        try {
+            pinnedContent.put("other md5", new ByteArrayInputStream(content));
+            throw new AssertionError("content with a wrong md5 has been accepted");
+        } catch (IOException ignored) {
+        }
+
+        assertThat(pinnedContent.contains("other md5"), equalTo(false));
+        assertThat(pinnedContent.getSize(), equalTo((long) 0));
+    }
+
+    @Test
+    public void retainOnly() throws IOException {
+
+        pinnedContent.put(md5, new ByteArrayInputStream(content));
+
+        pinnedContent.retainOnly(Collections.singleton(md5));
+        assertThat(pinnedContent.getCount(), equalTo(1));
+
+        pinnedContent.retainOnly(Collections.<String>emptySet());
+        assertThat(pinnedContent.getCount(), equalTo(0));
+        assertThat(pinnedContent.open(md5), nullValue());
+    }
+}
@@ -0,0 +1,65 @@
+package jdbox.content.pinned;
+
+import jdbox.BaseFileSystemModuleTest;
+import jdbox.content.OpenedFiles;
+import jdbox.content.bytestores.ByteStore;
+import jdbox.driveadapter.File;
+import jdbox.filetree.FileTree;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static jdbox.utils.TestUtils.getTestContent;
+import static jdbox.utils.TestUtils.getTestContentBytes;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class PinnerTest extends BaseFileSystemModuleTest {
+
+    private PinnedContent pinnedContent;
+    private Pinner pinner;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        pinnedContent = lifeCycleManager.getInstance(PinnedContent.class);
+        pinnedContent.setConfig(new PinnedContent.Config(tempFolderProvider.create().toFile()));
+        pinner = lifeCycleManager.getInstance(Pinner.class);
+    }
+
+    @Test
+    public void pinnedContentIsServedFromDisk() throws IOException {
+
+        File folder = drive.createFolder("pinned", testFolder);
+        File file = drive.createFile("test.txt", folder, getTestContent());
+
+        pinner.pin("/pinned");
+
+        assertThat(pinner.isPinned("/pinned/test.txt"), equalTo(true));
+        assertThat(pinner.isPinned("/"), equalTo(false));
+
+        pinner.sync();
+
+        assertThat(pinnedContent.contains(file.getMd5Sum()), equalTo(true));
+
+        jdbox.models.File pinned = lifeCycleManager.getInstance(FileTree.class).get("/pinned/test.txt");
+
+        // the download url is broken on purpose, the content must not be downloaded
+        pinned.setDownloadUrl("http://localhost:1/");
+
+        try (ByteStore content = lifeCycleManager.getInstance(OpenedFiles.class)
+                .open(pinned, OpenedFiles.OpenMode.READ_ONLY)) {
+            byte[] actual = new byte[getTestContentBytes().length];
+            assertThat(content.read(ByteBuffer.wrap(actual), 0, actual.length), equalTo(actual.length));
+            assertThat(actual, equalTo(getTestContentBytes()));
+        }
+
+        assertThat(pinner.unpin("/pinned"), equalTo(true));
+
+        pinner.sync();
+
+        assertThat(pinnedContent.getCount(), equalTo(0));
+    }
+}
@@ -1,19 +1,30 @@
 package jdbox.filetree;
 
+import com.google.common.collect.ImmutableList;
 import jdbox.driveadapter.DriveAdapter;
 import jdbox.driveadapter.File;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static jdbox.filetree.FileTreeMatcher.contains;
 import static jdbox.utils.TestUtils.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.Matchers.notNull;
-import static org.mockito.Mockito.doCallRealMethod;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.*;
 
 @Category(FileTree.class)
 public class FileTreeBasicReadTest extends BaseFileTreeTest {
@@ -47,6 +58,29 @@ public class FileTreeBasicReadTest extends BaseFileTreeTest {
         assertCounts(2, 1);
     }
 
+    /**
+     * Create more files than fit in one page of changes, make sure all of them appear.
+     */
+    @Test
+    public void createMultiplePages() throws IOException {
+
+        assertThat(fileTree, contains().nothing());
+
+        drive.createFile(getTestFileName(), testFolder, getTestContent());
+        drive.createFile(getTestFileName() + " 2", testFolder, getTestContent());
+        drive.createFolder(getTestFolderName(), testFolder);
+
+        lifeCycleManager.getInstance(DriveAdapter.class).setConfig(new DriveAdapter.Config(1));
+
+        fileTree.update();
+
+        assertThat(fileTree, contains()
+                .defaultTestFile().and().defaultTestFile().withName(getTestFileName() + " 2").and()
+                .defaultTestFolder());
+
+        assertCounts(4, 1);
+    }
+
     /**
      * Rename a file, make sure it has the new name.
      */
@@ -96,6 +130,139 @@ public class FileTreeBasicReadTest extends BaseFileTreeTest {
         assertThat(fileTree, contains().defaultTestFile().in("test_folder_2"));
     }
 
+    /**
+     * List a directory that does not fit in one page, make sure all files are visible.
+     */
+    @Test
+    public void listMultiplePages() throws IOException {
+
+        drive.createFile(getTestFileName(), testFolder, getTestContent());
+        drive.createFile(getTestFileName() + " 2", testFolder, getTestContent());
+        drive.createFolder(getTestFolderName(), testFolder);
+
+        lifeCycleManager.getInstance(DriveAdapter.class).setConfig(new DriveAdapter.Config(2));
+
+        assertThat(fileTree, contains()
+                .defaultTestFile().and().defaultTestFile().withName(getTestFileName() + " 2").and()
+                .defaultTestFolder());
+
+        assertCounts(4, 1);
+    }
+
+    /**
+     * List a directory that does not fit in one page, make sure files of retrieved pages are visible before the list
+     * is complete.
+     */
+    @Test(timeout = 15000)
+    public void listPagesIncrementally() throws Exception {
+
+        drive.createFile(getTestFileName(), testFolder, getTestContent());
+        drive.createFile(getTestFileName() + " 2", testFolder, getTestContent());
+
+        DriveAdapter driveSpy = lifeCycleManager.getInstance(DriveAdapter.class);
+        drive.setConfig(new DriveAdapter.Config(1));
+
+        final List<String> firstPage = new ArrayList<>();
+        final CountDownLatch firstPageMerged = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+
+                final DriveAdapter.PageHandler<File> handler =
+                        (DriveAdapter.PageHandler<File>) invocation.getArguments()[1];
+
+                drive.getChildren((File) invocation.getArguments()[0], new DriveAdapter.PageHandler<File>() {
+                    @Override
+                    public void apply(List<File> page) throws IOException {
+
+                        handler.apply(page);
+
+                        if (firstPageMerged.getCount() != 0) {
+                            for (File file : page)
+                                firstPage.add(file.getName());
+                            firstPageMerged.countDown();
+                            try {
+                                resume.await();
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
+                });
+
+                return null;
+            }
+        }).when(driveSpy).getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<String>> children = executor.submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                return fileTree.getChildren("/");
+            }
+        });
+
+        firstPageMerged.await();
+
+        assertThat(firstPage.size(), equalTo(1));
+        assertThat(fileTree.get(testDirPath.resolve(firstPage.get(0))).getName(), equalTo(firstPage.get(0)));
+        assertThat(children.isDone(), equalTo(false));
+
+        resume.countDown();
+
+        assertThat(children.get().size(), equalTo(2));
+
+        executor.shutdown();
+
+        doCallRealMethod().when(driveSpy)
+                .getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
+    }
+
+    /**
+     * List a directory from several threads at once, make sure its files are retrieved only once.
+     */
+    @Test
+    public void concurrentList() throws Exception {
+
+        drive.createFile(getTestFileName(), testFolder, getTestContent());
+
+        DriveAdapter driveSpy = lifeCycleManager.getInstance(DriveAdapter.class);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(500);
+                invocation.callRealMethod();
+                return null;
+            }
+        }).when(driveSpy).getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<String>>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return fileTree.getChildren("/");
+                }
+            }));
+        }
+
+        for (Future<List<String>> future : futures)
+            assertThat(future.get(), equalTo((List<String>) ImmutableList.of(getTestFileName())));
+
+        executor.shutdown();
+
+        verify(driveSpy, times(1)).getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
+
+        doCallRealMethod().when(driveSpy)
+                .getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
+    }
+
     @Test
     public void listFailureRecovery() throws IOException {
 
@@ -105,7 +272,8 @@ public class FileTreeBasicReadTest extends BaseFileTreeTest {
 
         DriveAdapter driveSpy = lifeCycleManager.getInstance(DriveAdapter.class);
 
-        doThrow(new IOException("something bad happened")).when(driveSpy).getChildren((File) notNull());
+        doThrow(new IOException("something bad happened")).when(driveSpy)
+                .getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
 
         try {
             fileTree.getChildren("/");
@@ -113,7 +281,8 @@ public class FileTreeBasicReadTest extends BaseFileTreeTest {
         } catch (IOException ignored) {
         }
 
-        doCallRealMethod().when(driveSpy).getChildren((File) notNull());
+        doCallRealMethod().when(driveSpy)
+                .getChildren((File) notNull(), Matchers.<DriveAdapter.PageHandler<File>>any());
 
         assertThat(fileTree, contains().defaultTestFile().and().defaultTestFolder());
         assertThat(fileTree, contains().defaultTestFile().in(getTestFolderName()));
@@ -0,0 +1,90 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.filetree.FileTree;
+import jdbox.models.File;
+import jdbox.models.fileids.FileIdStore;
+import jdbox.utils.Benchmark;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Reports how much heap known files take per tracked file, including the published version. The measurement depends
+ * on the JVM and on the garbage collector, so it is only logged.
+ */
+@Category({FileTree.class, Benchmark.class})
+public class KnownFilesFootprintTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnownFilesFootprintTest.class);
+
+    private static final int dirCount = 100;
+    private static final int filesPerDir = 1000;
+
+    private static final String[] mimeTypes = new String[]{
+            "text/plain", "image/jpeg", "application/pdf", "application/octet-stream"};
+
+    @Test
+    public void bytesPerFile() {
+
+        FileIdStore fileIdStore = new FileIdStore();
+
+        long before = usedMemory();
+
+        KnownFiles knownFiles = new KnownFiles();
+        knownFiles.setRoot(fileIdStore.get("root"));
+        knownFiles.getRoot().setTracked();
+
+        for (int i = 0; i < dirCount; i++) {
+
+            KnownFile dir = knownFiles.create(fileIdStore.get("dir" + i), "dir " + i, true, new Date());
+            dir.setTracked();
+            knownFiles.getRoot().tryAddChild(dir);
+
+            for (int j = 0; j < filesPerDir; j++)
+                dir.tryAddChild(knownFiles.create(createFile(fileIdStore, i * filesPerDir + j)));
+        }
+
+        knownFiles.publish();
+
+        long bytesPerFile = (usedMemory() - before) / knownFiles.getFileCount();
+
+        logger.info("{} known files take {} bytes per file", knownFiles.getFileCount(), bytesPerFile);
+
+        assertThat(knownFiles.getVersion().getFileCount(), equalTo(dirCount * filesPerDir + dirCount + 1));
+    }
+
+    private static File createFile(FileIdStore fileIdStore, int index) {
+
+        String id = String.format("0B%026d", index);
+
+        File file = new File(fileIdStore.get(id));
+        file.setName("file " + index + ".txt");
+        file.setSize(index * 100);
+        file.setMd5Sum(String.format("%032x", index));
+        file.setEtag(String.format("\"MTQ%025d\"", index));
+        // a new instance for every file, as if it had been received from the cloud
+        file.setMimeType(new String(mimeTypes[index % mimeTypes.length]));
+        file.setDownloadUrl(
+                "https://doc-0s-9c-docs.googleusercontent.com/docs/securesc/ha0ro937gcuc7l7deffksulhg5h7mbp1/" +
+                        id + "?e=download&gd=true");
+        file.setAlternateLink("https://drive.google.com/file/d/" + id + "/view?usp=drivesdk");
+        file.setCreatedDate(new Date(1400000000000L + index));
+        file.setModifiedDate(new Date(1400000001000L + index));
+        file.setAccessedDate(new Date(1400000002000L + index));
+
+        return file;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,104 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.filetree.FileTree;
+import jdbox.models.File;
+import jdbox.models.fileids.FileIdStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@Category(FileTree.class)
+public class KnownFilesSnapshotTest {
+
+    private final FileIdStore fileIdStore = new FileIdStore();
+    private final KnownFiles knownFiles = new KnownFiles();
+
+    @Before
+    public void setUp() {
+
+        knownFiles.setRoot(fileIdStore.get("root"));
+        knownFiles.setLargestChangeId(42);
+        knownFiles.getRoot().setTracked();
+
+        KnownFile dir = knownFiles.create(fileIdStore.get("dir"), "dir", true, new Date(1000));
+        dir.setTracked();
+        knownFiles.getRoot().tryAddChild(dir);
+
+        KnownFile untracked = knownFiles.create(fileIdStore.get("untracked"), "untracked", true, null);
+        knownFiles.getRoot().tryAddChild(untracked);
+
+        File file = new File(fileIdStore.get("file"));
+        file.setName("file");
+        file.setSize(3);
+        file.setMd5Sum("md5");
+        file.setEtag("etag");
+        file.setDownloadUrl("url");
+        file.setModifiedDate(new Date(2000));
+
+        KnownFile shared = knownFiles.create(file);
+        dir.tryAddChild(shared);
+        knownFiles.getRoot().tryAddChild(shared);
+
+        KnownFile local = knownFiles.create(fileIdStore.create(), "local", false, null);
+        dir.tryAddChild(local);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+
+        KnownFiles restored = new KnownFiles();
+        KnownFilesSnapshot snapshot = writeAndRead();
+        snapshot.restore(restored, fileIdStore);
+
+        assertThat(snapshot.getRootId(), equalTo("root"));
+        assertThat(restored.getLargestChangeId(), equalTo(42L));
+        assertThat(restored.getFileCount(), equalTo(4));
+        assertThat(restored.getTrackedDirCount(), equalTo(2));
+
+        KnownFile dir = restored.getRoot().getChildrenOrNull().get("dir");
+        assertThat(dir.getId(), sameInstance(fileIdStore.get("dir")));
+        assertThat(dir.getChildrenOrNull().keySet(), contains("file"));
+        assertThat(restored.getRoot().getChildrenOrNull().get("untracked").getChildrenOrNull(), nullValue());
+
+        KnownFile shared = dir.getChildrenOrNull().get("file");
+        assertThat(restored.getRoot().getChildrenOrNull().get("file"), sameInstance(shared));
+        assertThat(shared.getParents().size(), equalTo(2));
+        assertThat(restored.getByMd5("md5"), contains(shared));
+
+        File file = shared.toFile();
+        assertThat(file.getSize(), equalTo(3L));
+        assertThat(file.getEtag(), equalTo("etag"));
+        assertThat(file.getDownloadUrl(), equalTo("url"));
+        assertThat(file.getModifiedDate(), equalTo(new Date(2000)));
+        assertThat(file.getCreatedDate(), nullValue());
+        assertThat(file.getParentIds().size(), equalTo(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KnownFilesSnapshot.write(knownFiles, new DataOutputStream(bytes));
+
+        byte[] truncated = new byte[bytes.size() - 1];
+        System.arraycopy(bytes.toByteArray(), 0, truncated, 0, truncated.length);
+
+        KnownFilesSnapshot.read(new DataInputStream(new ByteArrayInputStream(truncated)), fileIdStore);
+    }
+
+    private KnownFilesSnapshot writeAndRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KnownFilesSnapshot.write(knownFiles, new DataOutputStream(bytes));
+        return KnownFilesSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), fileIdStore);
+    }
+}
@@ -0,0 +1,124 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.filetree.FileTree;
+import jdbox.models.FileAttributes;
+import jdbox.models.fileids.FileIdStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@Category(FileTree.class)
+public class KnownFilesVersionTest {
+
+    private final FileIdStore fileIdStore = new FileIdStore();
+    private final KnownFiles knownFiles = new KnownFiles();
+
+    @Before
+    public void setUp() {
+        knownFiles.setRoot(fileIdStore.get("root"));
+        knownFiles.getRoot().setTracked();
+        knownFiles.publish();
+    }
+
+    @Test
+    public void publishedVersionIsNotAffectedByLaterChanges() {
+
+        KnownFile dir = knownFiles.create(fileIdStore.get("dir"), "dir", true, new Date(1000));
+        dir.setTracked();
+        knownFiles.getRoot().tryAddChild(dir);
+
+        KnownFilesVersion first = knownFiles.publish();
+
+        assertThat(knownFiles.getVersion(), sameInstance(first));
+        assertThat(first.getRoot().getChildNamesOrNull(), contains("dir"));
+        assertThat(first.getChild(first.getRoot(), "dir").getChildNamesOrNull(), empty());
+
+        dir.rename("renamed");
+        dir.tryAddChild(knownFiles.create(fileIdStore.get("file"), "file", false, new Date(2000)));
+
+        assertThat(first.getRoot().getChildNamesOrNull(), contains("dir"));
+        assertThat(first.getChild(first.getRoot(), "dir").toFile().getName(), equalTo("dir"));
+        assertThat(first.getChild(first.getRoot(), "dir").getChildNamesOrNull(), empty());
+        assertThat(first.getFileCount(), equalTo(2));
+
+        KnownFilesVersion second = knownFiles.publish();
+
+        assertThat(second.getRoot().getChildNamesOrNull(), contains("renamed"));
+        FileNode renamed = second.getChild(second.getRoot(), "renamed");
+        assertThat(renamed.toFile().getName(), equalTo("renamed"));
+        assertThat(second.getChild(renamed, "file").toFile().getModifiedDate(), nullValue());
+        assertThat(second.getFileCount(), equalTo(3));
+    }
+
+    @Test
+    public void removedFilesAreNotPublished() {
+
+        KnownFile file = knownFiles.create(fileIdStore.get("file"), "file", false, null);
+        knownFiles.getRoot().tryAddChild(file);
+        knownFiles.publish();
+
+        knownFiles.getRoot().tryRemoveChild(file);
+
+        KnownFilesVersion version = knownFiles.publish();
+        assertThat(version.getRoot().getChildNamesOrNull(), empty());
+        assertThat(version.getFileCount(), equalTo(1));
+    }
+
+    @Test
+    public void attributes() {
+
+        KnownFile file = knownFiles.create(fileIdStore.get("file"), "file", false, new Date(1000));
+        knownFiles.getRoot().tryAddChild(file);
+
+        KnownFilesVersion first = knownFiles.publish();
+        FileAttributes attributes = first.getChild(first.getRoot(), "file").getAttributes();
+
+        assertThat(attributes, sameInstance(file.getAttributes()));
+        assertThat(attributes.getCreatedTime(), equalTo(1000L));
+        assertThat(attributes.getModifiedTime(), equalTo(FileAttributes.unknownTime));
+
+        file.setContentProperties(5, "md5");
+
+        KnownFilesVersion second = knownFiles.publish();
+
+        assertThat(second.getChild(second.getRoot(), "file").getAttributes().getSize(), equalTo(5L));
+        assertThat(attributes.getSize(), equalTo(0L));
+    }
+
+    @Test
+    public void partiallyTrackedDirectory() {
+
+        KnownFile dir = knownFiles.create(fileIdStore.get("dir"), "dir", true, null);
+        knownFiles.getRoot().tryAddChild(dir);
+        dir.setPartiallyTracked();
+        dir.tryAddChild(knownFiles.create(fileIdStore.get("file"), "file", false, null));
+
+        KnownFilesVersion partial = knownFiles.publish();
+        FileNode node = partial.getChild(partial.getRoot(), "dir");
+
+        assertThat(dir.isTracked(), equalTo(false));
+        assertThat(dir.getChildrenOrNull(), nullValue());
+        assertThat(node.isTracked(), equalTo(false));
+        assertThat(node.getChildNamesOrNull(), nullValue());
+        assertThat(partial.getChild(node, "file"), notNullValue());
+
+        dir.setTracked();
+
+        KnownFilesVersion complete = knownFiles.publish();
+        node = complete.getChild(complete.getRoot(), "dir");
+
+        assertThat(node.isTracked(), equalTo(true));
+        assertThat(node.getChildNamesOrNull(), contains("file"));
+    }
+
+    @Test
+    public void nothingChanged() {
+        KnownFilesVersion version = knownFiles.getVersion();
+        assertThat(knownFiles.publish(), sameInstance(version));
+    }
+}
@@ -0,0 +1,161 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.filetree.FileTree;
+import jdbox.models.fileids.FileIdStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@Category(FileTree.class)
+public class PathCacheTest {
+
+    private final FileIdStore fileIdStore = new FileIdStore();
+    private final KnownFiles knownFiles = new KnownFiles();
+    private final PathCache pathCache = knownFiles.getPathCache();
+
+    private KnownFile dir;
+    private KnownFile file;
+    private KnownFile other;
+
+    @Before
+    public void setUp() {
+
+        knownFiles.setRoot(fileIdStore.get("root"));
+        knownFiles.getRoot().setTracked();
+
+        dir = knownFiles.create(fileIdStore.get("dir"), "dir", true, null);
+        dir.setTracked();
+        knownFiles.getRoot().tryAddChild(dir);
+
+        file = knownFiles.create(fileIdStore.get("file"), "file", false, null);
+        dir.tryAddChild(file);
+
+        other = knownFiles.create(fileIdStore.get("other"), "other", false, null);
+        knownFiles.getRoot().tryAddChild(other);
+
+        knownFiles.publish();
+
+        cache("/dir", dir);
+        cache("/dir/file", file);
+        cache("/other", other);
+    }
+
+    @Test
+    public void hit() {
+
+        assertThat(pathCache.get("/dir/file").getId(), sameInstance(file.getId()));
+
+        file.setContentProperties(10, "md5");
+        knownFiles.publish();
+
+        assertThat(pathCache.get("/dir/file").toFile().getSize(), equalTo(10L));
+        assertThat(pathCache.get("/missing"), nullValue());
+    }
+
+    @Test
+    public void renameOfDirectoryInvalidatesDescendants() {
+
+        dir.rename("renamed");
+        knownFiles.publish();
+
+        assertThat(pathCache.get("/dir"), nullValue());
+        assertThat(pathCache.get("/dir/file"), nullValue());
+        assertThat(pathCache.get("/other"), notNullValue());
+    }
+
+    @Test
+    public void removalOfFileInvalidatesOnlyIt() {
+
+        dir.tryRemoveChild(file);
+        knownFiles.publish();
+
+        assertThat(pathCache.get("/dir/file"), nullValue());
+        assertThat(pathCache.get("/dir"), notNullValue());
+        assertThat(pathCache.get("/other"), notNullValue());
+    }
+
+    @Test
+    public void moveInvalidatesOnlyOldPath() {
+
+        dir.tryAddChild(other);
+        knownFiles.getRoot().tryRemoveChild(other);
+        knownFiles.publish();
+
+        assertThat(pathCache.get("/other"), nullValue());
+        assertThat(pathCache.get("/dir/file"), notNullValue());
+    }
+
+    @Test
+    public void staleInsertionIsDropped() {
+
+        long stamp = pathCache.getStamp();
+
+        dir.rename("renamed");
+        knownFiles.publish();
+
+        pathCache.put("/dir/file", knownFiles.getVersion().nodes.get(file), stamp);
+
+        assertThat(pathCache.get("/dir/file"), nullValue());
+    }
+
+    @Test
+    public void resetInvalidatesEverything() {
+
+        knownFiles.setRoot(fileIdStore.get("root"));
+        knownFiles.publish();
+
+        assertThat(pathCache.size(), equalTo(0));
+    }
+
+    @Test
+    public void absentIsInvalidatedByLinking() {
+
+        pathCache.putAbsent("/dir/new", pathCache.getStamp());
+        pathCache.putAbsent("/dir/other", pathCache.getStamp());
+        assertThat(pathCache.isAbsent("/dir/new"), equalTo(true));
+
+        dir.tryAddChild(knownFiles.create(fileIdStore.get("new"), "new", false, null));
+        other.rename("renamed");
+        knownFiles.publish();
+
+        assertThat(pathCache.isAbsent("/dir/new"), equalTo(false));
+        assertThat(pathCache.isAbsent("/dir/other"), equalTo(true));
+
+        dir.tryAddChild(other);
+        knownFiles.publish();
+
+        assertThat(pathCache.isAbsent("/dir/other"), equalTo(true));
+        assertThat(pathCache.isAbsent("/dir/renamed"), equalTo(false));
+    }
+
+    @Test
+    public void absentIsInvalidatedByUnlinkingOfDirectoryAbove() {
+
+        pathCache.putAbsent("/dir/missing", pathCache.getStamp());
+
+        knownFiles.getRoot().tryRemoveChild(dir);
+        knownFiles.publish();
+
+        assertThat(pathCache.isAbsent("/dir/missing"), equalTo(false));
+    }
+
+    @Test
+    public void staleAbsentInsertionIsDropped() {
+
+        long stamp = pathCache.getStamp();
+
+        dir.tryAddChild(knownFiles.create(fileIdStore.get("new"), "new", false, null));
+        knownFiles.publish();
+
+        pathCache.putAbsent("/dir/new", stamp);
+
+        assertThat(pathCache.isAbsent("/dir/new"), equalTo(false));
+    }
+
+    private void cache(String path, KnownFile file) {
+        pathCache.put(path, knownFiles.getVersion().nodes.get(file), pathCache.getStamp());
+    }
+}
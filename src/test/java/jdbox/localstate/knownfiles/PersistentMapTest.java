@@ -0,0 +1,95 @@
+package jdbox.localstate.knownfiles;
+
+import jdbox.filetree.FileTree;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@Category(FileTree.class)
+public class PersistentMapTest {
+
+    @Test
+    public void randomOperations() {
+        randomOperations(10000);
+    }
+
+    @Test
+    public void collisions() {
+        // only 8 different hash codes, so most keys collide
+        randomOperations(8);
+    }
+
+    @Test
+    public void versionsAreIndependent() {
+
+        PersistentMap<String, Integer> first = PersistentMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        PersistentMap<String, Integer> second = first.plus("a", 3).minus("b").plus("c", 4);
+
+        assertThat(first, equalTo((Map<String, Integer>) new HashMap<String, Integer>() {{
+            put("a", 1);
+            put("b", 2);
+        }}));
+
+        assertThat(second, equalTo((Map<String, Integer>) new HashMap<String, Integer>() {{
+            put("a", 3);
+            put("c", 4);
+        }}));
+
+        assertThat(second.minus("a").minus("c"), sameInstance(PersistentMap.<String, Integer>empty()));
+        assertThat(second.minus("d"), sameInstance(second));
+    }
+
+    private void randomOperations(int hashCodes) {
+
+        Random random = new Random(0);
+
+        PersistentMap<Key, Integer> map = PersistentMap.empty();
+        Map<Key, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+
+            Key key = new Key(random.nextInt(2000), hashCodes);
+
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+
+            assertThat(map.get(key), equalTo(expected.get(key)));
+            assertThat(map.size(), equalTo(expected.size()));
+        }
+
+        assertThat(map, equalTo(expected));
+    }
+
+    private static class Key {
+
+        private final int value;
+        private final int hashCodes;
+
+        private Key(int value, int hashCodes) {
+            this.value = value;
+            this.hashCodes = hashCodes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            // spread the hash codes over all levels of the trie
+            return (value % hashCodes) * 0x9e3779b9;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package jdbox.memory;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@Category(MemoryPressureController.class)
+public class MemoryPressureControllerTest {
+
+    private final MemoryPressureController controller =
+            new MemoryPressureController(new MemoryPressureController.Config());
+
+    private final List<String> shed = new ArrayList<>();
+
+    @Test
+    public void listenersAreAskedInPriorityOrder() {
+
+        controller.register(30, new NamedListener("metadata"));
+        controller.register(10, new NamedListener("pool"));
+        controller.register(20, new NamedListener("retained"));
+
+        for (int i = 0; i < 4; i++)
+            controller.signal();
+
+        assertThat(shed, contains("pool", "retained", "metadata", "metadata"));
+        assertThat(controller.getSignals(), equalTo((long) 4));
+        assertThat(controller.getReleased(), equalTo((long) 4 * 100));
+    }
+
+    @Test
+    public void reliefStartsOver() {
+
+        controller.register(10, new NamedListener("pool"));
+        controller.register(20, new NamedListener("retained"));
+
+        controller.signal();
+        controller.relieve();
+        controller.signal();
+
+        assertThat(shed, contains("pool", "pool"));
+    }
+
+    @Test
+    public void unregister() {
+
+        NamedListener pool = new NamedListener("pool");
+
+        controller.register(10, pool);
+        controller.register(20, new NamedListener("retained"));
+        controller.unregister(pool);
+
+        controller.signal();
+
+        assertThat(shed, contains("retained"));
+    }
+
+    @Test
+    public void initAndTearDown() {
+        controller.init();
+        controller.tearDown();
+    }
+
+    private class NamedListener implements MemoryPressureListener {
+
+        private final String name;
+
+        private NamedListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public long shed() {
+            shed.add(name);
+            return 100;
+        }
+    }
+}
@@ -126,6 +126,60 @@ public class UploaderTest extends BaseLifeCycleManagerTest {
         expectedOrders.add(Lists.newArrayList(1, 3));
     }
 
+    @Test
+    public void fence() throws InterruptedException, TimeoutException {
+
+        Task task = taskFactory.create(1, "hello");
+
+        try (Uploader.Fence fence = uploader.openFence()) {
+
+            assertThat(fence.isTouched(task.getFile().getId()), equalTo(false));
+
+            uploader.submit(task);
+            uploader.waitUntilIsDone(5, TimeUnit.SECONDS);
+
+            assertThat(fence.isTouched(task.getFile().getId()), equalTo(true));
+        }
+
+        try (Uploader.Fence fence = uploader.openFence()) {
+            assertThat(fence.isTouched(task.getFile().getId()), equalTo(false));
+        }
+    }
+
+    @Test
+    public void fenceWaitsForIdAssignments() throws InterruptedException, IOException {
+
+        final Uploader.IdAssignment idAssignment = uploader.beginIdAssignment();
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                idAssignment.close();
+            }
+        }.start();
+
+        Date start = new Date();
+
+        try (Uploader.Fence fence = uploader.openFence()) {
+            fence.awaitIdAssignments();
+        }
+
+        assertThat(new Date().getTime() - start.getTime(), greaterThanOrEqualTo(400L));
+
+        start = new Date();
+
+        try (Uploader.Fence fence = uploader.openFence()) {
+            fence.awaitIdAssignments();
+        }
+
+        assertThat(new Date().getTime() - start.getTime(), lessThan(100L));
+    }
+
     @Test
     public void concurrency() throws InterruptedException, TimeoutException {
 
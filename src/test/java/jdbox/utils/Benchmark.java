@@ -0,0 +1,8 @@
+package jdbox.utils;
+
+/**
+ * Category of tests that only report measurements. They are excluded from regular runs, run one with
+ * mvn test -Dtest=SomeTest -Dtest.excludedGroups=
+ */
+public interface Benchmark {
+}
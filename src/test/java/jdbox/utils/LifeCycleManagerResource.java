@@ -44,6 +44,10 @@ public class LifeCycleManagerResource extends ExternalResource implements Fixtur
         return lifeCycleManager.getInjector().getInstance(Key.get(type, annotation));
     }
 
+    public <T> T getInstance(Key<T> key) {
+        return lifeCycleManager.getInjector().getInstance(key);
+    }
+
     public List<Module> getModules() {
         return modules;
     }
@@ -37,7 +37,7 @@ public class TestFolderProvider extends ExternalResource implements Fixture {
 
     public void before() throws IOException {
         if (driveServiceProvider != null) {
-            drive = new DriveAdapter(driveServiceProvider.getDriveService(), false);
+            drive = new DriveAdapter(driveServiceProvider.getDriveService(), false, DriveAdapter.defaultConfig);
             testFolder = drive.createFolder(UUID.randomUUID().toString(), null);
         } else {
             assert lifeCycleManager != null;
@@ -10,14 +10,16 @@ import static org.mockito.Mockito.spy;
 class MockDriveAdapterProvider implements Provider<DriveAdapter> {
 
     private final Drive drive;
+    private final DriveAdapter.Config config;
 
     @Inject
-    public MockDriveAdapterProvider(Drive drive) {
+    public MockDriveAdapterProvider(Drive drive, DriveAdapter.Config config) {
         this.drive = drive;
+        this.config = config;
     }
 
     @Override
     public DriveAdapter get() {
-        return spy(new DriveAdapter(drive));
+        return spy(new DriveAdapter(drive, config));
     }
 }
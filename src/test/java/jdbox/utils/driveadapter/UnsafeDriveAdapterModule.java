@@ -14,7 +14,8 @@ public class UnsafeDriveAdapterModule extends AbstractModule {
             bind(Boolean.class).annotatedWith(Names.named("DriveAdapter.safe")).toInstance(false);
             bind(DriveAdapter.class)
                     .annotatedWith(Unsafe.class)
-                    .toConstructor(DriveAdapter.class.getConstructor(Drive.class, Boolean.class))
+                    .toConstructor(DriveAdapter.class.getConstructor(
+                            Drive.class, Boolean.class, DriveAdapter.Config.class))
                     .in(Singleton.class);
         } catch (NoSuchMethodException e) {
             throw new RuntimeException(e);